@@ -0,0 +1,29 @@
+plugins {
+	java
+	id("me.champeau.jmh") version "0.7.2"
+}
+
+description = "JMH benchmarks for the sectors service hot paths"
+
+dependencies {
+	jmh(project(":sectors-service"))
+	jmh(platform("org.springframework.boot:spring-boot-dependencies:3.3.5"))
+	jmh("org.springframework.data:spring-data-jpa")
+	jmh("jakarta.persistence:jakarta.persistence-api")
+	// the entities carry Hibernate's @Cache, which javac resolves when it reads them
+	jmh("org.hibernate.orm:hibernate-core")
+	jmh("com.fasterxml.jackson.core:jackson-databind")
+	jmh("com.fasterxml.jackson.dataformat:jackson-dataformat-cbor")
+	jmh("com.fasterxml.jackson.dataformat:jackson-dataformat-smile")
+}
+
+jmh {
+	jmhVersion.set("1.37")
+	fork.set(1)
+	warmupIterations.set(3)
+	iterations.set(5)
+	jvmArgs.set(listOf("-Xms2g", "-Xmx2g"))
+	resultFormat.set("JSON")
+	// e.g. ./gradlew :sectors-benchmarks:jmh -Pjmh.includes=SectorTree
+	providers.gradleProperty("jmh.includes").orNull?.let { includes.set(listOf(it)) }
+}
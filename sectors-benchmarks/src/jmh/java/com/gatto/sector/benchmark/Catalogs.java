@@ -0,0 +1,73 @@
+package com.gatto.sector.benchmark;
+
+import com.gatto.sector.entity.Sector;
+import com.gatto.sector.repository.SectorChangeLogRepository;
+import com.gatto.sector.repository.SectorRepository;
+import com.gatto.sector.view.SectorView;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic catalogs shaped like the seed data: ten roots and a fan-out of ten below them.
+ */
+final class Catalogs {
+
+    private static final int FAN_OUT = 10;
+
+    private Catalogs() {
+    }
+
+    static List<SectorView> views(int size) {
+        List<SectorView> views = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            views.add(new SectorView(id, "Sector " + id, parentOf(id)));
+        }
+        return views;
+    }
+
+    static List<Sector> entities(int size) {
+        List<Sector> sectors = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            Long parentId = parentOf(id);
+            Sector sector = new Sector();
+            sector.setId(id);
+            sector.setName("Sector " + id);
+            sector.setParent(parentId != null ? sectors.get((int) (parentId - 1)) : null);
+            sectors.add(sector);
+        }
+        return sectors;
+    }
+
+    /**
+     * A repository whose only working query is the catalog projection the snapshot loads from.
+     */
+    static SectorRepository repository(List<SectorView> views) {
+        return (SectorRepository) Proxy.newProxyInstance(
+                SectorRepository.class.getClassLoader(),
+                new Class<?>[]{SectorRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findAllViews")) {
+                        return views;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * A change log that only reports its current version.
+     */
+    static SectorChangeLogRepository changeLog() {
+        return new SectorChangeLogRepository(null) {
+            @Override
+            public State state() {
+                return new State(1L, 1L);
+            }
+        };
+    }
+
+    private static Long parentOf(long id) {
+        return id <= FAN_OUT ? null : id / FAN_OUT;
+    }
+}
@@ -0,0 +1,89 @@
+package com.gatto.sector.benchmark;
+
+import com.gatto.sector.entity.Sector;
+import com.gatto.sector.service.SectorCatalog;
+import com.gatto.sector.service.SectorService;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping and tree building over the whole catalog, from the 80-node seed up to 1M nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SectorCatalogBenchmark {
+
+    @Param({"80", "10000", "1000000"})
+    int size;
+
+    private List<Sector> entities;
+    private List<SectorView> views;
+    private SectorTree tree;
+    // a snapshot whose name index is already built, which every edit then carries forward
+    private SectorTree indexed;
+    private SectorService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        entities = Catalogs.entities(size);
+        views = Catalogs.views(size);
+        tree = SectorTree.of(1L, views);
+        indexed = SectorTree.of(1L, views);
+        indexed.search("sector", 1);
+
+        SectorCatalog catalog = new SectorCatalog(Catalogs.repository(views), Catalogs.changeLog(), event -> {});
+        service = new SectorService(Catalogs.repository(views), catalog, Catalogs.changeLog(), null, event -> {});
+        catalog.current();
+    }
+
+    @Benchmark
+    public void fromEntity(Blackhole blackhole) {
+        for (Sector sector : entities) {
+            blackhole.consume(SectorView.fromEntity(sector));
+        }
+    }
+
+    @Benchmark
+    public List<SectorView> getAllSectors() {
+        return service.getAllSectors();
+    }
+
+    @Benchmark
+    public SectorTree buildTree() {
+        return SectorTree.of(2L, views);
+    }
+
+    @Benchmark
+    public SectorTree upsertIntoTree() {
+        return tree.with(new SectorView(1L, "Renamed", null));
+    }
+
+    @Benchmark
+    public List<SectorView> descendantsOfRoot() {
+        return tree.descendants(1L);
+    }
+
+    @Benchmark
+    public List<SectorView> searchByName() {
+        return indexed.search("ctor 12", 10);
+    }
+
+    @Benchmark
+    public SectorTree upsertIntoIndexedTree() {
+        return indexed.with(new SectorView(1L, "Renamed", null));
+    }
+}
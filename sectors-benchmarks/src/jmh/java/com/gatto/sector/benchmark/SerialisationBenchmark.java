@@ -0,0 +1,72 @@
+package com.gatto.sector.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialisation of the whole catalog, as a list of views and as a streamed snapshot, in each of
+ * the formats the controllers negotiate. Output goes to a discarding stream so only encoding is
+ * measured; the encoded size of each format is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerialisationBenchmark {
+
+    @Param({"80", "10000", "1000000"})
+    int size;
+
+    @Param({"json", "smile", "cbor"})
+    String format;
+
+    private ObjectMapper objectMapper;
+
+    private List<SectorView> views;
+    private SectorTree tree;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper(factory(format));
+        views = Catalogs.views(size);
+        tree = SectorTree.of(1L, views);
+        System.out.printf("%n%s catalog of %d sectors: %d bytes%n", format, size,
+                objectMapper.writeValueAsBytes(tree).length);
+    }
+
+    @Benchmark
+    public void sectorViewList() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), views);
+    }
+
+    @Benchmark
+    public void sectorTreeStreaming() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), tree);
+    }
+
+    private static JsonFactory factory(String format) {
+        return switch (format) {
+            case "json" -> new JsonFactory();
+            case "smile" -> new SmileFactory();
+            case "cbor" -> new CBORFactory();
+            default -> throw new IllegalArgumentException(format);
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package com.gatto.sector.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gatto.sector.view.SectorView;
+import com.gatto.sector.view.UserSelectionView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling a {@link UserSelectionView} from a selection cache entry, as getSelection does on a
+ * cache hit, and writing it as JSON. A miss reads the sector ids with one query and caches them;
+ * a pending write-behind save is returned as it is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserSelectionViewBenchmark {
+
+    @Param({"1", "30", "80"})
+    int selected;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // as UserSelectionCache holds it
+    private long[] cached;
+    private UserSelectionView view;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cached = Catalogs.views(80).stream()
+                .limit(selected)
+                .mapToLong(SectorView::id)
+                .toArray();
+        view = fromCache();
+    }
+
+    @Benchmark
+    public UserSelectionView fromCache() {
+        return new UserSelectionView("john", Arrays.stream(cached).boxed().toList());
+    }
+
+    @Benchmark
+    public void serialise() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), view);
+    }
+}
@@ -0,0 +1,21 @@
+plugins {
+	java
+	application
+}
+
+description = "Open-model HTTP load generator for a locally running sectors service"
+
+dependencies {
+	implementation(platform("org.springframework.boot:spring-boot-dependencies:3.3.5"))
+	implementation("com.fasterxml.jackson.core:jackson-databind")
+	implementation("org.hdrhistogram:HdrHistogram:2.2.2")
+}
+
+application {
+	mainClass.set("com.gatto.sector.loadtest.LoadTest")
+}
+
+tasks.named<JavaExec>("run") {
+	// ./gradlew :sectors-loadtest:run --args="--saveRate=200 --users=100000"
+	workingDir = rootDir
+}
@@ -0,0 +1,83 @@
+package com.gatto.sector.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome counters for one endpoint. Latencies are recorded from the intended
+ * arrival time, so time spent queueing behind a slow server is part of the measurement.
+ */
+final class EndpointStats {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final String name;
+    private final Recorder recorder = new Recorder(MAX_LATENCY_NANOS, 3);
+    private final Histogram total = new Histogram(MAX_LATENCY_NANOS, 3);
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    void completed(int status, long latencyNanos) {
+        recorder.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+        statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        if (status >= 400) {
+            errors.increment();
+        }
+    }
+
+    /** Transport failure or timeout; the request never got a status. */
+    void failed(long latencyNanos) {
+        recorder.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+        errors.increment();
+    }
+
+    /** The arrival was not sent because too many requests were already in flight. */
+    void dropped() {
+        dropped.increment();
+    }
+
+    synchronized Map<String, Object> report(double elapsedSeconds) {
+        total.add(recorder.getIntervalHistogram());
+
+        Map<String, Object> latency = new TreeMap<>();
+        latency.put("p50", millis(total.getValueAtPercentile(50)));
+        latency.put("p90", millis(total.getValueAtPercentile(90)));
+        latency.put("p99", millis(total.getValueAtPercentile(99)));
+        latency.put("p999", millis(total.getValueAtPercentile(99.9)));
+        latency.put("max", millis(total.getMaxValue()));
+        latency.put("mean", millis(total.getMean()));
+
+        Map<String, Long> codes = new TreeMap<>();
+        statuses.forEach((status, count) -> codes.put(String.valueOf(status), count.sum()));
+
+        long requests = total.getTotalCount();
+        Map<String, Object> report = new TreeMap<>();
+        report.put("requests", requests);
+        report.put("throughputPerSecond", elapsedSeconds > 0 ? requests / elapsedSeconds : 0.0);
+        report.put("errors", errors.sum());
+        report.put("errorRate", requests > 0 ? (double) errors.sum() / requests : 0.0);
+        report.put("dropped", dropped.sum());
+        report.put("statusCodes", codes);
+        report.put("latencyMs", latency);
+        return report;
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
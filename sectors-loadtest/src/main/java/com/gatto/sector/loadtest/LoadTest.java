@@ -0,0 +1,244 @@
+package com.gatto.sector.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Replays the peak traffic pattern against a running service: a catalog load phase on
+ * {@code GET /api/sectors}, followed by a burst of selection saves and reads.
+ * <p>
+ * The load is open-model: each endpoint gets Poisson arrivals at its configured rate and a
+ * request is started at its arrival time whether or not earlier ones have finished. Arrivals
+ * that find {@code maxInFlight} requests outstanding are counted as dropped instead of sent.
+ */
+public final class LoadTest {
+
+    private static final String CATALOG = "GET /api/sectors";
+    private static final String SAVE = "POST /api/user-selections";
+    private static final String READ = "GET /api/user-selections";
+
+    private final LoadTestConfig config;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client;
+    private final Semaphore inFlight;
+    private final UserNames userNames;
+
+    private LoadTest(LoadTestConfig config) {
+        this.config = config;
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(config.timeout())
+                .build();
+        this.inFlight = new Semaphore(config.maxInFlight());
+        this.userNames = UserNames.of(config.users(), config.distribution(), config.zipfExponent());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromArgs(args);
+        Map<String, Object> report = new LoadTest(config).run();
+
+        Path path = Path.of(config.report());
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(path.toFile(), report);
+        System.out.println("Report written to " + path.toAbsolutePath());
+    }
+
+    private Map<String, Object> run() throws Exception {
+        try {
+            long[] sectorIds = fetchSectorIds();
+            System.out.printf("Catalog has %d sectors, seeding %d users%n", sectorIds.length, config.users());
+            seedUsers(sectorIds);
+
+            Map<String, Object> phases = new LinkedHashMap<>();
+
+            EndpointStats catalog = new EndpointStats(CATALOG);
+            phases.put("catalog", phase(config.catalogPhase(), List.of(
+                    new Arrival(catalog, config.catalogRate(), random -> get("/api/sectors")))));
+
+            EndpointStats save = new EndpointStats(SAVE);
+            EndpointStats read = new EndpointStats(READ);
+            phases.put("burst", phase(config.burstPhase(), List.of(
+                    new Arrival(save, config.saveRate(), random -> saveRequest(random, sectorIds)),
+                    new Arrival(read, config.readRate(), random -> get("/api/user-selections?username="
+                            + URLEncoder.encode(userNames.next(random), StandardCharsets.UTF_8))))));
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("config", config.describe());
+            report.put("phases", phases);
+            return report;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private record Arrival(EndpointStats stats, double ratePerSecond, Function<SplittableRandom, HttpRequest> request) {}
+
+    /**
+     * Runs one generator thread per endpoint for the given duration, then waits for
+     * the requests still in flight before reporting.
+     */
+    private Map<String, Object> phase(Duration duration, List<Arrival> arrivals) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+
+        List<Thread> generators = new ArrayList<>();
+        for (int i = 0; i < arrivals.size(); i++) {
+            Arrival arrival = arrivals.get(i);
+            SplittableRandom random = new SplittableRandom(config.seed() + i);
+            generators.add(Thread.ofPlatform().name("arrivals-" + arrival.stats().name())
+                    .start(() -> generate(arrival, random, start, end)));
+        }
+        for (Thread generator : generators) {
+            generator.join();
+        }
+        drain();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (Arrival arrival : arrivals) {
+            Map<String, Object> stats = arrival.stats().report(duration.toNanos() / 1e9);
+            endpoints.put(arrival.stats().name(), stats);
+            System.out.printf("%-28s %s%n", arrival.stats().name(), stats);
+        }
+        System.out.printf("phase took %.1fs%n", elapsedSeconds);
+        return endpoints;
+    }
+
+    private void generate(Arrival arrival, SplittableRandom random, long start, long end) {
+        if (arrival.ratePerSecond() <= 0) {
+            return;
+        }
+        double meanGapNanos = 1e9 / arrival.ratePerSecond();
+        long intended = start;
+        while (true) {
+            // exponential gaps give a Poisson arrival process
+            intended += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+            if (intended >= end) {
+                return;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            HttpRequest request = arrival.request().apply(random);
+            if (!inFlight.tryAcquire()) {
+                arrival.stats().dropped();
+                continue;
+            }
+            long scheduledAt = intended;
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        long latency = System.nanoTime() - scheduledAt;
+                        if (failure != null) {
+                            arrival.stats().failed(latency);
+                        } else {
+                            arrival.stats().completed(response.statusCode(), latency);
+                        }
+                        inFlight.release();
+                    });
+        }
+    }
+
+    private void drain() throws InterruptedException {
+        long waitSeconds = config.timeout().toSeconds() + 1;
+        if (inFlight.tryAcquire(config.maxInFlight(), waitSeconds, TimeUnit.SECONDS)) {
+            inFlight.release(config.maxInFlight());
+        } else {
+            System.out.println("Requests still in flight after " + waitSeconds + "s, reporting without them");
+        }
+    }
+
+    private long[] fetchSectorIds() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(get("/api/sectors"), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET /api/sectors returned " + response.statusCode());
+        }
+        JsonNode sectors = mapper.readTree(response.body());
+        long[] ids = new long[sectors.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = sectors.get(i).get("id").asLong();
+        }
+        if (ids.length == 0) {
+            throw new IllegalStateException("The catalog is empty, import sectors before running the load test");
+        }
+        return ids;
+    }
+
+    /**
+     * Gives every load-test user a stored selection so the read burst measures lookups,
+     * not missing users. Not part of the report.
+     */
+    private void seedUsers(long[] sectorIds) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(config.seed() - 1);
+        Semaphore permits = new Semaphore(64);
+        for (int user = 0; user < config.users(); user++) {
+            HttpRequest request = post("/api/user-selections", selection("loadtest-user-" + user, random, sectorIds));
+            permits.acquire();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> permits.release());
+        }
+        permits.acquire(64);
+    }
+
+    private HttpRequest saveRequest(SplittableRandom random, long[] sectorIds) {
+        return post("/api/user-selections", selection(userNames.next(random), random, sectorIds));
+    }
+
+    private String selection(String username, SplittableRandom random, long[] sectorIds) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("username", username);
+        body.put("sectorIds", random.longs(config.sectorsPerSave(), 0, sectorIds.length)
+                .map(i -> sectorIds[(int) i])
+                .toArray());
+        try {
+            return mapper.writeValueAsString(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path))
+                .timeout(config.timeout())
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(uri(path))
+                .timeout(config.timeout())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return config.baseUrl().resolve(path);
+    }
+}
@@ -0,0 +1,81 @@
+package com.gatto.sector.loadtest;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Run settings, given on the command line as {@code --name=value}.
+ * Rates are arrivals per second; arrivals do not wait for earlier requests to finish.
+ */
+public record LoadTestConfig(
+        URI baseUrl,
+        Duration catalogPhase,
+        double catalogRate,
+        Duration burstPhase,
+        double saveRate,
+        double readRate,
+        int users,
+        String distribution,
+        double zipfExponent,
+        int sectorsPerSave,
+        int maxInFlight,
+        Duration timeout,
+        long seed,
+        String report
+) {
+
+    private static final Set<String> OPTIONS = Set.of(
+            "baseUrl", "catalogPhase", "catalogRate", "burstPhase", "saveRate", "readRate", "users",
+            "distribution", "zipfExponent", "sectorsPerSave", "maxInFlight", "timeout", "seed", "report");
+
+    public static LoadTestConfig fromArgs(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0 || !OPTIONS.contains(arg.substring(2, split))) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected --name=value with name in " + OPTIONS);
+            }
+            values.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+
+        return new LoadTestConfig(
+                URI.create(values.getOrDefault("baseUrl", "http://localhost:8085")),
+                Duration.parse(values.getOrDefault("catalogPhase", "PT20S")),
+                Double.parseDouble(values.getOrDefault("catalogRate", "200")),
+                Duration.parse(values.getOrDefault("burstPhase", "PT60S")),
+                Double.parseDouble(values.getOrDefault("saveRate", "100")),
+                Double.parseDouble(values.getOrDefault("readRate", "300")),
+                Integer.parseInt(values.getOrDefault("users", "10000")),
+                values.getOrDefault("distribution", "zipf"),
+                Double.parseDouble(values.getOrDefault("zipfExponent", "1.1")),
+                Integer.parseInt(values.getOrDefault("sectorsPerSave", "5")),
+                Integer.parseInt(values.getOrDefault("maxInFlight", "2000")),
+                Duration.parse(values.getOrDefault("timeout", "PT10S")),
+                Long.parseLong(values.getOrDefault("seed", "42")),
+                values.getOrDefault("report", "sectors-loadtest/build/loadtest-report.json")
+        );
+    }
+
+    /** Settings as plain values for the report. */
+    public Map<String, Object> describe() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("baseUrl", baseUrl.toString());
+        values.put("catalogPhase", catalogPhase.toString());
+        values.put("catalogRate", catalogRate);
+        values.put("burstPhase", burstPhase.toString());
+        values.put("saveRate", saveRate);
+        values.put("readRate", readRate);
+        values.put("users", users);
+        values.put("distribution", distribution);
+        values.put("zipfExponent", zipfExponent);
+        values.put("sectorsPerSave", sectorsPerSave);
+        values.put("maxInFlight", maxInFlight);
+        values.put("timeout", timeout.toString());
+        values.put("seed", seed);
+        return values;
+    }
+}
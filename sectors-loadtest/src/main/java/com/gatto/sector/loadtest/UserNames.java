@@ -0,0 +1,54 @@
+package com.gatto.sector.loadtest;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Picks user names either uniformly or with a Zipf skew, where a few users account for most
+ * of the traffic. Rank {@code k} is drawn with probability proportional to {@code 1 / k^s}.
+ */
+final class UserNames {
+
+    private final int users;
+    private final double[] cdf;
+
+    private UserNames(int users, double[] cdf) {
+        this.users = users;
+        this.cdf = cdf;
+    }
+
+    static UserNames of(int users, String distribution, double exponent) {
+        if (users < 1) {
+            throw new IllegalArgumentException("users must be positive");
+        }
+        return switch (distribution) {
+            case "uniform" -> new UserNames(users, null);
+            case "zipf" -> new UserNames(users, zipfCdf(users, exponent));
+            default -> throw new IllegalArgumentException("Unknown distribution " + distribution + ", expected uniform or zipf");
+        };
+    }
+
+    String next(RandomGenerator random) {
+        int rank;
+        if (cdf == null) {
+            rank = random.nextInt(users);
+        } else {
+            int found = Arrays.binarySearch(cdf, random.nextDouble());
+            rank = Math.min(found >= 0 ? found : -found - 1, users - 1);
+        }
+        return "loadtest-user-" + rank;
+    }
+
+    private static double[] zipfCdf(int users, double exponent) {
+        double[] cdf = new double[users];
+        double sum = 0;
+        for (int k = 0; k < users; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < users; k++) {
+            cdf[k] /= sum;
+        }
+        return cdf;
+    }
+}
@@ -4,16 +4,21 @@ import * as cheerio from 'cheerio';
 const html = fs.readFileSync('index.html', 'utf8');
 const $ = cheerio.load(html);
 
-const sectors = [];
+// ids of the closest option seen so far at each indent level
+const parents = [];
 
 $('select option').each((i, el) => {
     const value = $(el).attr('value');
     const raw = $(el).html();
 
     const indent = (raw.match(/&nbsp;/g) || []).length / 4;
-    const name = raw.replace(/&nbsp;/g, '').trim();
+    const name = $(el).text().replace(/\u00a0/g, '').trim();
 
-    sectors.push({ id: Number(value), name, indent });
-});
+    const id = Number(value);
+    const parentId = indent > 0 ? parents[indent - 1] : null;
+    parents[indent] = id;
+    parents.length = indent + 1;
 
-console.log(sectors);
+    // one JSON object per line, the format accepted by POST /api/sectors/import
+    console.log(JSON.stringify({ id, name, parentId }));
+});
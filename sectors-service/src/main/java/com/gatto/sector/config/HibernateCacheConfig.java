@@ -0,0 +1,36 @@
+package com.gatto.sector.config;
+
+import com.gatto.sector.entity.Sector;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.util.OptionalLong;
+
+/**
+ * Second-level cache for {@link Sector}, backed by Caffeine through JCache. The region is
+ * created here rather than on first use so it always has a size bound and statistics.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer sectorCacheCustomizer(
+            @Value("${sectors.cache.sector.max-size:100000}") long maxSize) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager();
+        if (cacheManager.getCache(Sector.CACHE_REGION) == null) {
+            CaffeineConfiguration<Object, Object> region = new CaffeineConfiguration<>();
+            region.setMaximumSize(OptionalLong.of(maxSize));
+            region.setStatisticsEnabled(true);
+            cacheManager.createCache(Sector.CACHE_REGION, region);
+        }
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+    }
+}
@@ -0,0 +1,36 @@
+package com.gatto.sector.config;
+
+import com.gatto.sector.controller.UserSelectionReadHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.RouterFunctions;
+import org.springframework.web.servlet.function.ServerResponse;
+
+/**
+ * Routes the database-bound reads to their reactive handlers. Router functions are matched
+ * before annotated controllers, so these take over the same paths only while the profile is on.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveReadConfig implements WebMvcConfigurer {
+
+    @Bean
+    public RouterFunction<ServerResponse> reactiveReads(UserSelectionReadHandler userSelections) {
+        return RouterFunctions.route()
+                .GET("/api/user-selections", userSelections::get)
+                .build();
+    }
+
+    // @CrossOrigin on the controllers does not reach router functions
+    @Override
+    public void addCorsMappings(CorsRegistry registry) {
+        registry.addMapping("/api/user-selections")
+                .allowedOrigins("http://localhost:4200")
+                .exposedHeaders(HttpHeaders.ETAG);
+    }
+}
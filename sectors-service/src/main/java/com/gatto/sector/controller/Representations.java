@@ -0,0 +1,82 @@
+package com.gatto.sector.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Strong ETags for endpoints that answer in JSON, Smile or CBOR. The three bodies of one version
+ * differ byte for byte, so each gets its own tag: {@code "12"} for JSON, {@code "12-smile"},
+ * {@code "12-cbor"}. Every response carrying one, 304 included, varies by {@code Accept}.
+ */
+final class Representations {
+
+    // in the order the converters are registered, which is what "*/*" resolves to
+    private static final List<Map.Entry<MediaType, String>> FORMATS = List.of(
+            Map.entry(MediaType.APPLICATION_JSON, ""),
+            Map.entry(MediaType.parseMediaType("application/x-jackson-smile"), "-smile"),
+            Map.entry(MediaType.APPLICATION_CBOR, "-cbor"));
+
+    private Representations() {
+    }
+
+    /**
+     * Tag of {@code version} in the format the {@code Accept} header will be answered in.
+     */
+    static String etag(Object version, String accept) {
+        return "\"" + version + suffix(accept) + "\"";
+    }
+
+    /**
+     * The version a tag from {@link #etag} was made from, whatever its format.
+     */
+    static String version(String tag) {
+        for (Map.Entry<MediaType, String> format : FORMATS) {
+            if (!format.getValue().isEmpty() && tag.endsWith(format.getValue())) {
+                return tag.substring(0, tag.length() - format.getValue().length());
+            }
+        }
+        return tag;
+    }
+
+    static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .build();
+    }
+
+    private static String suffix(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return "";
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+            // the order content negotiation tries them in: by quality, then the more specific
+            // first, so "*/*, application/cbor" is answered in CBOR
+            MimeTypeUtils.sortBySpecificity(accepted);
+        } catch (InvalidMediaTypeException | InvalidMimeTypeException e) {
+            // rejected by content negotiation anyway
+            return "";
+        }
+        for (MediaType type : accepted) {
+            for (Map.Entry<MediaType, String> format : FORMATS) {
+                if (type.getQualityValue() > 0 && type.includes(format.getKey())) {
+                    return format.getValue();
+                }
+            }
+        }
+        return "";
+    }
+}
@@ -1,14 +1,38 @@
 package com.gatto.sector.controller;
 
+import com.gatto.sector.error.SectorCycleException;
+import com.gatto.sector.error.SectorDoesNotExistException;
+import com.gatto.sector.service.SectorAudienceService;
+import com.gatto.sector.service.SectorEventBroadcaster;
+import com.gatto.sector.service.SectorImportService;
 import com.gatto.sector.service.SectorService;
+import com.gatto.sector.service.SectorStatsService;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorAudienceView;
+import com.gatto.sector.view.SectorBatchView;
+import com.gatto.sector.view.SectorChangesView;
+import com.gatto.sector.view.SectorDeleteView;
+import com.gatto.sector.view.SectorImportView;
+import com.gatto.sector.view.SectorMoveView;
+import com.gatto.sector.view.SectorOperationView;
+import com.gatto.sector.view.SectorSearchView;
+import com.gatto.sector.view.SectorStatsView;
 import com.gatto.sector.view.SectorView;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -20,17 +44,77 @@ import java.util.NoSuchElementException;
 public class SectorController {
 
     private final SectorService sectorService;
+    private final SectorImportService sectorImportService;
+    private final SectorStatsService sectorStatsService;
+    private final SectorEventBroadcaster sectorEventBroadcaster;
+    private final SectorAudienceService sectorAudienceService;
 
     @GetMapping
-    public List<SectorView> all() {
-        return sectorService.getAllSectors();
+    public ResponseEntity<SectorTree> all(WebRequest request) {
+        SectorTree catalog = sectorService.getCatalog();
+        String etag = Representations.etag(catalog.version(), request.getHeader(HttpHeaders.ACCEPT));
+        if (request.checkNotModified(etag)) {
+            return Representations.notModified(etag);
+        }
+        // serialised element by element into the response stream by SectorTreeSerializer
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(catalog);
+    }
+
+    @GetMapping("/changes")
+    public ResponseEntity<SectorChangesView> changes(@RequestParam long since) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(sectorService.getChanges(since));
+    }
+
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+        // a reconnecting EventSource resumes from the version of the last event it received
+        return sectorEventBroadcaster.subscribe(lastEventId != null ? () -> sectorService.getChanges(lastEventId) : null);
+    }
+
+    @GetMapping("/stats")
+    public List<SectorStatsView> stats() {
+        return sectorStatsService.getStats();
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<SectorSearchView>> search(@RequestParam String q,
+                                                         @RequestParam(defaultValue = "10") int limit,
+                                                         WebRequest request) {
+        try {
+            String etag = catalogEtag(request);
+            if (request.checkNotModified(etag)) {
+                return Representations.notModified(etag);
+            }
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(sectorService.search(q, limit));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected sector search: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<SectorView> get(@PathVariable Long id) {
+    public ResponseEntity<SectorView> get(@PathVariable Long id, WebRequest request) {
         try {
+            String etag = catalogEtag(request);
+            if (request.checkNotModified(etag)) {
+                return Representations.notModified(etag);
+            }
             SectorView sector = sectorService.findById(id).orElseThrow();
-            return ResponseEntity.ok(sector);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(sector);
         } catch (NoSuchElementException e) {
             log.warn("Sector not found with ID: {}", id, e);
             return ResponseEntity.notFound().build();
@@ -40,6 +124,41 @@ public class SectorController {
         }
     }
 
+    @GetMapping("/{id}/descendants")
+    public ResponseEntity<List<SectorView>> descendants(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(sectorService.findDescendants(id).orElseThrow());
+        } catch (NoSuchElementException e) {
+            log.warn("Sector not found with ID: {}", id, e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/{id}/ancestors")
+    public ResponseEntity<List<SectorView>> ancestors(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(sectorService.findAncestors(id).orElseThrow());
+        } catch (NoSuchElementException e) {
+            log.warn("Sector not found with ID: {}", id, e);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/{id}/audience")
+    public ResponseEntity<SectorAudienceView> audience(@PathVariable Long id,
+                                                       @RequestParam(defaultValue = "0") int offset,
+                                                       @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(sectorAudienceService.getAudience(id, offset, limit).orElseThrow());
+        } catch (NoSuchElementException e) {
+            log.warn("Sector not found with ID: {}", id, e);
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected audience query: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<SectorView> update(@PathVariable Long id, @RequestBody SectorView view) {
         try {
@@ -48,6 +167,9 @@ public class SectorController {
             }
             SectorView savedSector = sectorService.update(id, view);
             return ResponseEntity.ok(savedSector);
+        } catch (SectorCycleException e) {
+            log.warn("Rejected move of sector {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (NoSuchElementException e) {
             log.warn("Sector not found with ID: {}", id, e);
             return ResponseEntity.notFound().build();
@@ -72,6 +194,37 @@ public class SectorController {
         }
     }
 
+    @DeleteMapping("/{id}/subtree")
+    public ResponseEntity<SectorDeleteView> deleteSubtree(@PathVariable Long id,
+                                                          @RequestParam(defaultValue = "false") boolean reassignSelections) {
+        try {
+            log.info("Deleting subtree of sector with ID: {}", id);
+            return ResponseEntity.ok(sectorService.deleteSubtree(id, reassignSelections));
+        } catch (SectorDoesNotExistException e) {
+            log.warn("Sector not found with ID: {}", id);
+            return ResponseEntity.notFound().build();
+        } catch (DataIntegrityViolationException e) {
+            log.error("Subtree delete of sector {} conflicts with concurrent changes", id, e);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @PostMapping("/{id}/move")
+    public ResponseEntity<SectorView> move(@PathVariable Long id, @RequestBody SectorMoveView target) {
+        try {
+            return ResponseEntity.ok(sectorService.move(id, target.parentId()));
+        } catch (SectorDoesNotExistException e) {
+            log.warn("Sector or new parent not found for move of {}", id);
+            return ResponseEntity.notFound().build();
+        } catch (SectorCycleException e) {
+            log.warn("Rejected move of sector {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (DataIntegrityViolationException e) {
+            log.error("Move of sector {} conflicts with concurrent changes", id, e);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
     @PostMapping()
     public ResponseEntity<SectorView> create(@RequestBody SectorView view) {
         try {
@@ -83,4 +236,43 @@ public class SectorController {
         }
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<SectorBatchView> batch(@RequestBody List<SectorOperationView> operations) {
+        try {
+            return ResponseEntity.ok(sectorService.applyBatch(operations));
+        } catch (SectorDoesNotExistException e) {
+            log.warn("Sector batch refers to a missing sector", e);
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected sector batch: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (SectorCycleException e) {
+            log.warn("Rejected sector batch: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (ObjectOptimisticLockingFailureException | DataIntegrityViolationException e) {
+            log.error("Sector batch conflicts with the current catalog", e);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+    public ResponseEntity<SectorImportView> importSectors(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                          InputStream body) throws IOException {
+        try {
+            SectorImportView result = sectorImportService.importSectors(body, MediaType.parseMediaType(contentType));
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected sector import: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (DataIntegrityViolationException e) {
+            log.error("Sector import conflicts with concurrent changes", e);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    // read before the data: a concurrent edit can only make the tag older than the body, never newer
+    private String catalogEtag(WebRequest request) {
+        return Representations.etag(sectorService.catalogVersion(), request.getHeader(HttpHeaders.ACCEPT));
+    }
+
 }
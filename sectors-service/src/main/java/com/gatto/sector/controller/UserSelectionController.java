@@ -1,27 +1,77 @@
 package com.gatto.sector.controller;
 
+import com.gatto.sector.error.StaleSelectionException;
 import com.gatto.sector.service.UserSelectionService;
 import com.gatto.sector.view.UserSelectionView;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/user-selections")
-@CrossOrigin(origins = "http://localhost:4200")
+@CrossOrigin(origins = "http://localhost:4200", exposedHeaders = HttpHeaders.ETAG)
+@Slf4j
 @RequiredArgsConstructor
 public class UserSelectionController {
 
     private final UserSelectionService userSelectionService;
 
     @PostMapping
-    public ResponseEntity<UserSelectionView> save(@RequestBody UserSelectionView view) {
-        return ResponseEntity.ok(userSelectionService.saveSelection(view));
+    public ResponseEntity<UserSelectionView> save(@RequestBody UserSelectionView view,
+                                                  @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                  WebRequest request) {
+        try {
+            UserSelectionView saved = userSelectionService.saveSelection(view, ifMatch != null ? versions(ifMatch) : null);
+            return ResponseEntity.ok()
+                    .eTag(etag(saved, request))
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(saved);
+        } catch (StaleSelectionException e) {
+            log.warn("Rejected selection save: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
     }
 
     @GetMapping
-    public ResponseEntity<UserSelectionView> get(@RequestParam String username) {
-        UserSelectionView view = userSelectionService.getSelection(username);
-        return ResponseEntity.ok(view);
+    public ResponseEntity<UserSelectionView> get(@RequestParam String username, WebRequest request) {
+        UserSelectionView view;
+        try {
+            view = userSelectionService.getSelection(username);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = etag(view, request);
+        if (request.checkNotModified(etag)) {
+            return Representations.notModified(etag);
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(view);
+    }
+
+    private static String etag(UserSelectionView view, WebRequest request) {
+        return Representations.etag(UserSelectionService.versionOf(view.sectorIds()), request.getHeader(HttpHeaders.ACCEPT));
+    }
+
+    /**
+     * If-Match compares strongly, so weak tags can never match and are left out. A tag handed out
+     * with a Smile or CBOR body names the same version as the JSON one.
+     */
+    private static List<String> versions(String ifMatch) {
+        return ETag.parse(ifMatch).stream()
+                .filter(tag -> !tag.weak())
+                .map(tag -> tag.isWildcard() ? "*" : Representations.version(tag.tag()))
+                .toList();
     }
 }
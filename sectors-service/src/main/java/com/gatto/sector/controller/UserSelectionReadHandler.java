@@ -0,0 +1,49 @@
+package com.gatto.sector.controller;
+
+import com.gatto.sector.service.ReactiveUserSelectionService;
+import com.gatto.sector.service.UserSelectionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+/**
+ * {@code GET /api/user-selections} for the {@code reactive} profile, with the same ETags as
+ * {@link UserSelectionController}. The response is asynchronous, so the request thread goes back
+ * to the pool while the database answers.
+ */
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+public class UserSelectionReadHandler {
+
+    private final ReactiveUserSelectionService reactiveUserSelectionService;
+
+    public ServerResponse get(ServerRequest request) {
+        String username = request.param("username").orElse(null);
+        if (username == null) {
+            return ServerResponse.badRequest().build();
+        }
+        return ServerResponse.async(reactiveUserSelectionService.getSelection(username)
+                .map(view -> {
+                    String etag = Representations.etag(UserSelectionService.versionOf(view.sectorIds()),
+                            request.headers().firstHeader(HttpHeaders.ACCEPT));
+                    return request.checkNotModified(etag)
+                            .map(notModified -> ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                                    .eTag(etag)
+                                    .cacheControl(CacheControl.noCache())
+                                    .varyBy(HttpHeaders.ACCEPT)
+                                    .build())
+                            .orElseGet(() -> ServerResponse.ok()
+                                    .eTag(etag)
+                                    .cacheControl(CacheControl.noCache())
+                                    .varyBy(HttpHeaders.ACCEPT)
+                                    .body(view));
+                })
+                .defaultIfEmpty(ServerResponse.notFound().build()));
+    }
+}
@@ -5,17 +5,25 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
 @Table(name = "sector")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Sector.CACHE_REGION)
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
 public class Sector {
 
+    public static final String CACHE_REGION = "sector";
+
+    // pooled: one nextval() per 50 ids, and inserts batch (IDENTITY forces one insert per row)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sector_id")
+    @SequenceGenerator(name = "sector_id", sequenceName = "sector_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -6,6 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.io.Serializable;
+
 @Entity
 @Table(name = "user_sector_selection")
 @Data
@@ -14,15 +16,29 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class UserSectorSelection {
 
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
+    @EmbeddedId
+    private Key id;
 
-    @Column(nullable = false)
-    private String username;
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @MapsId("userId")
+    @JoinColumn(name = "user_id", nullable = false)
+    private AppUser user;
 
     @ManyToOne(optional = false)
+    @MapsId("sectorId")
     @JoinColumn(name = "sector_id", nullable = false)
     private Sector sector;
 
+    @Embeddable
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+
+        private Integer userId;
+
+        private Long sectorId;
+
+    }
+
 }
@@ -0,0 +1,7 @@
+package com.gatto.sector.error;
+
+public class SectorCycleException extends RuntimeException {
+    public SectorCycleException(long sectorId, long parentId) {
+        super("Sector " + parentId + " is sector " + sectorId + " or one of its descendants");
+    }
+}
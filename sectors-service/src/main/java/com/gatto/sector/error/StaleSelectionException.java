@@ -0,0 +1,7 @@
+package com.gatto.sector.error;
+
+public class StaleSelectionException extends RuntimeException {
+    public StaleSelectionException(String username) {
+        super("Selection of " + username + " changed since it was read");
+    }
+}
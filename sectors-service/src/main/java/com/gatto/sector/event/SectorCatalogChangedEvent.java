@@ -0,0 +1,15 @@
+package com.gatto.sector.event;
+
+import com.gatto.sector.view.SectorChangeView;
+
+import java.util.List;
+
+/**
+ * A committed catalog change. {@code fullResync} marks changes that were not logged per sector,
+ * such as a bulk import; {@code changes} is empty then.
+ */
+public record SectorCatalogChangedEvent(
+        long version,
+        boolean fullResync,
+        List<SectorChangeView> changes
+) {}
@@ -0,0 +1,14 @@
+package com.gatto.sector.event;
+
+import java.util.List;
+
+/**
+ * A committed branch delete. The selections of {@code usernames} on {@code sectorIds} are gone;
+ * {@code reassigned} of them were moved to {@code reassignedTo} when that is set.
+ */
+public record SectorSubtreeDeletedEvent(
+        List<Long> sectorIds,
+        List<String> usernames,
+        Long reassignedTo,
+        long reassigned
+) {}
@@ -0,0 +1,11 @@
+package com.gatto.sector.event;
+
+import java.util.List;
+
+public record UserSelectionChangedEvent(
+        int userId,
+        String username,
+        List<Long> sectorIds,
+        List<Long> addedSectorIds,
+        List<Long> removedSectorIds
+) {}
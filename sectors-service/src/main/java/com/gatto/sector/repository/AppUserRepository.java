@@ -0,0 +1,8 @@
+package com.gatto.sector.repository;
+
+import com.gatto.sector.entity.AppUser;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface AppUserRepository extends JpaRepository<AppUser, Integer>, AppUserRepositoryCustom {
+
+}
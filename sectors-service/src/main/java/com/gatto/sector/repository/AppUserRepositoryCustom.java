@@ -0,0 +1,11 @@
+package com.gatto.sector.repository;
+
+public interface AppUserRepositoryCustom {
+
+    /**
+     * Id of the user, registering the username on first use. The user's row stays locked until
+     * the transaction ends, so saves of the same user's selection run one after another.
+     */
+    int idFor(String username);
+
+}
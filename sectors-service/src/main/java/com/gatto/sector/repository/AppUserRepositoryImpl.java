@@ -0,0 +1,31 @@
+package com.gatto.sector.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Plain JDBC: registering a username is an upsert, which JPA cannot express.
+ */
+@RequiredArgsConstructor
+class AppUserRepositoryImpl implements AppUserRepositoryCustom {
+
+    // NO KEY UPDATE still lets other transactions insert selections referencing the user
+    private static final String FIND_SQL = "SELECT id FROM app_user WHERE username = ? FOR NO KEY UPDATE";
+
+    // DO UPDATE, not DO NOTHING: returns the id even when a concurrent transaction inserted it first
+    private static final String UPSERT_SQL = """
+            INSERT INTO app_user (username) VALUES (?)
+            ON CONFLICT (username) DO UPDATE SET username = EXCLUDED.username
+            RETURNING id""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int idFor(String username) {
+        // known users, the common case, are an index lookup and a row lock
+        List<Integer> ids = jdbcTemplate.queryForList(FIND_SQL, Integer.class, username);
+        return !ids.isEmpty() ? ids.get(0) : jdbcTemplate.queryForObject(UPSERT_SQL, Integer.class, username);
+    }
+}
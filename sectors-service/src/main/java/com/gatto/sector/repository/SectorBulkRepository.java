@@ -0,0 +1,79 @@
+package com.gatto.sector.repository;
+
+import com.gatto.sector.view.SectorView;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Loads sectors through the PostgreSQL COPY protocol. Runs on the connection of the surrounding
+ * transaction; rows must be ordered so that every parent precedes its children.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SectorBulkRepository {
+
+    private static final String COPY_SQL = "COPY sector (id, name, parent_id) FROM STDIN WITH (FORMAT csv)";
+    // never moves the sequence back: blocks handed out before the import may still be in use
+    private static final String SYNC_SEQUENCE_SQL = """
+            SELECT setval('sector_id_seq', GREATEST(
+                (SELECT COALESCE(MAX(id), 1) FROM sector),
+                (SELECT last_value FROM sector_id_seq)))""";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public long copyIn(List<SectorView> sectors) {
+        long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 512);
+                for (SectorView sector : sectors) {
+                    chunk.append(sector.id()).append(',');
+                    appendQuoted(chunk, sector.name());
+                    chunk.append(',');
+                    if (sector.parentId() != null) {
+                        chunk.append(sector.parentId());
+                    }
+                    chunk.append('\n');
+                    if (chunk.length() >= CHUNK_SIZE) {
+                        write(copy, chunk);
+                    }
+                }
+                write(copy, chunk);
+                return copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        });
+        jdbcTemplate.queryForObject(SYNC_SEQUENCE_SQL, Long.class);
+        return copied;
+    }
+
+    private static void write(CopyIn copy, StringBuilder chunk) throws SQLException {
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        chunk.setLength(0);
+    }
+
+    private static void appendQuoted(StringBuilder target, String value) {
+        target.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                target.append('"');
+            }
+            target.append(c);
+        }
+        target.append('"');
+    }
+}
@@ -0,0 +1,134 @@
+package com.gatto.sector.repository;
+
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorView;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Append-only log of sector mutations. Every append bumps the single {@code sector_change_state}
+ * row, whose lock is held to commit, so versions become visible in the order they were issued
+ * and a reader that has seen version N can never later find a smaller one.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SectorChangeLogRepository {
+
+    private static final String APPEND_SQL = """
+            WITH next AS (
+                UPDATE sector_change_state SET version = version + 1 WHERE id = 1 RETURNING version
+            )
+            INSERT INTO sector_change (version, sector_id, name, parent_id, deleted)
+            SELECT version, ?::bigint, ?::varchar, ?::bigint, ?::boolean FROM next
+            RETURNING version""";
+
+    // one round trip for a whole batch; the rows get consecutive versions in list order
+    private static final String APPEND_ALL_SQL = """
+            WITH next AS (
+                UPDATE sector_change_state SET version = version + ? WHERE id = 1 RETURNING version
+            ), appended AS (
+                INSERT INTO sector_change (version, sector_id, name, parent_id, deleted)
+                SELECT next.version - ? + change.position, change.sector_id, change.name, change.parent_id, change.deleted
+                FROM next, unnest(?::bigint[], ?::varchar[], ?::bigint[], ?::boolean[])
+                    WITH ORDINALITY AS change(sector_id, name, parent_id, deleted, position)
+                RETURNING version
+            )
+            SELECT MAX(version) FROM appended""";
+
+    private static final String RESYNC_SQL =
+            "UPDATE sector_change_state SET version = version + 1, compacted_to = version + 1 WHERE id = 1 RETURNING version";
+
+    private static final String STATE_SQL = "SELECT version, compacted_to FROM sector_change_state WHERE id = 1";
+
+    // only the latest change per sector matters to a client catching up
+    private static final String SINCE_SQL = """
+            SELECT * FROM (
+                SELECT DISTINCT ON (sector_id) version, sector_id, name, parent_id, deleted
+                FROM sector_change
+                WHERE version > ?
+                ORDER BY sector_id, version DESC
+            ) latest
+            ORDER BY version
+            LIMIT ?""";
+
+    private static final String COMPACT_SQL = """
+            WITH removed AS (
+                DELETE FROM sector_change WHERE changed_at < ? RETURNING version
+            )
+            UPDATE sector_change_state
+            SET compacted_to = GREATEST(compacted_to, (SELECT MAX(version) FROM removed))
+            WHERE id = 1 AND EXISTS (SELECT 1 FROM removed)""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record State(long version, long compactedTo) {}
+
+    public long appendUpsert(SectorView sector) {
+        return append(sector.id(), sector.name(), sector.parentId(), false);
+    }
+
+    public long appendDelete(long sectorId) {
+        return append(sectorId, null, null, true);
+    }
+
+    /**
+     * Logs the changes under consecutive versions; their own {@code version} is ignored.
+     *
+     * @return the version of the last change
+     */
+    public long appendAll(List<SectorChangeView> changes) {
+        int size = changes.size();
+        Long[] ids = new Long[size];
+        String[] names = new String[size];
+        Long[] parentIds = new Long[size];
+        Boolean[] deleted = new Boolean[size];
+        for (int i = 0; i < size; i++) {
+            SectorChangeView change = changes.get(i);
+            ids[i] = change.id();
+            names[i] = change.name();
+            parentIds[i] = change.parentId();
+            deleted[i] = change.deleted();
+        }
+        return jdbcTemplate.queryForObject(APPEND_ALL_SQL, Long.class, size, size, ids, names, parentIds, deleted);
+    }
+
+    /**
+     * Starts a new version that no delta can reach, for changes too large to log row by row.
+     */
+    public long resync() {
+        return jdbcTemplate.queryForObject(RESYNC_SQL, Long.class);
+    }
+
+    public State state() {
+        return jdbcTemplate.queryForObject(STATE_SQL,
+                (rs, rowNum) -> new State(rs.getLong("version"), rs.getLong("compacted_to")));
+    }
+
+    public List<SectorChangeView> findSince(long version, int limit) {
+        return jdbcTemplate.query(SINCE_SQL, (rs, rowNum) -> new SectorChangeView(
+                rs.getLong("version"),
+                rs.getLong("sector_id"),
+                rs.getString("name"),
+                rs.getObject("parent_id", Long.class),
+                rs.getBoolean("deleted")
+        ), version, limit);
+    }
+
+    /**
+     * Drops changes older than the cutoff and raises the watermark past them.
+     *
+     * @return whether anything was old enough to drop
+     */
+    public boolean compact(Instant cutoff) {
+        return jdbcTemplate.update(COMPACT_SQL, Timestamp.from(cutoff)) > 0;
+    }
+
+    private long append(long sectorId, String name, Long parentId, boolean deleted) {
+        return jdbcTemplate.queryForObject(APPEND_SQL, Long.class, sectorId, name, parentId, deleted);
+    }
+}
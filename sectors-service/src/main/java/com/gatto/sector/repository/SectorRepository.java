@@ -1,7 +1,19 @@
 package com.gatto.sector.repository;
 
 import com.gatto.sector.entity.Sector;
+import com.gatto.sector.view.SectorView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface SectorRepository extends JpaRepository<Sector, Long> {
+
+    @Query("select new com.gatto.sector.view.SectorView(s.id, s.name, p.id) from Sector s left join s.parent p")
+    List<SectorView> findAllViews();
+
+    @Query("select s.id from Sector s where s.id in :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
 }
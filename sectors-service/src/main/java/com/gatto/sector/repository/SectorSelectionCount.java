@@ -0,0 +1,9 @@
+package com.gatto.sector.repository;
+
+public interface SectorSelectionCount {
+
+    Long getSectorId();
+
+    long getSelections();
+
+}
@@ -0,0 +1,127 @@
+package com.gatto.sector.repository;
+
+import com.gatto.sector.entity.Sector;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Whole-branch operations, each a single recursive statement however large the branch.
+ * They bypass Hibernate, so the touched sectors are evicted from the second-level cache
+ * once the transaction commits.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SectorSubtreeRepository {
+
+    private static final String SUBTREE_CTE = """
+            WITH RECURSIVE subtree AS (
+                SELECT id FROM sector WHERE id = ?
+                UNION
+                SELECT s.id FROM sector s JOIN subtree t ON s.parent_id = t.id
+            )""";
+
+    // every CTE runs against the same snapshot; the foreign keys are checked at the end of the statement
+    private static final String DELETE_SQL = SUBTREE_CTE + """
+            , target AS (
+                SELECT CASE WHEN ? THEN parent_id END AS parent_id FROM sector WHERE id = ?
+            ), reassigned AS (
+                INSERT INTO user_sector_selection (user_id, sector_id)
+                SELECT DISTINCT u.user_id, target.parent_id
+                FROM user_sector_selection u JOIN subtree t ON u.sector_id = t.id, target
+                WHERE target.parent_id IS NOT NULL
+                ON CONFLICT (user_id, sector_id) DO NOTHING
+                RETURNING user_id
+            ), unselected AS (
+                DELETE FROM user_sector_selection u USING subtree t WHERE u.sector_id = t.id
+                RETURNING u.user_id
+            ), deleted AS (
+                DELETE FROM sector s USING subtree t WHERE s.id = t.id
+                RETURNING s.id
+            )
+            SELECT (SELECT array_agg(id ORDER BY id) FROM deleted) AS sector_ids,
+                   (SELECT array_agg(username) FROM app_user WHERE id IN (SELECT user_id FROM unselected)) AS usernames,
+                   (SELECT parent_id FROM target) AS reassigned_to,
+                   (SELECT count(*) FROM reassigned) AS reassigned""";
+
+    // the subtree check makes the statement refuse a cycle even if the caller's view was stale
+    private static final String MOVE_SQL = SUBTREE_CTE + """
+            UPDATE sector SET parent_id = ?
+            WHERE id = ? AND NOT EXISTS (SELECT 1 FROM subtree WHERE id = ?)""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * @param sectorIds every deleted sector, empty when the root did not exist
+     * @param usernames users who had any of them selected
+     * @param reassignedTo parent the selections were moved to, or {@code null}
+     * @param reassigned selections added to that parent
+     */
+    public record DeletedSubtree(List<Long> sectorIds, List<String> usernames, Long reassignedTo, long reassigned) {}
+
+    /**
+     * Deletes the sector, its descendants and their selections. With {@code reassignSelections}
+     * every user who had selected anything in the branch gets the branch's parent instead.
+     */
+    public DeletedSubtree deleteSubtree(long id, boolean reassignSelections) {
+        DeletedSubtree deleted = jdbcTemplate.queryForObject(DELETE_SQL, (rs, rowNum) -> new DeletedSubtree(
+                List.of(longs(rs.getArray("sector_ids"))),
+                List.of(strings(rs.getArray("usernames"))),
+                rs.getObject("reassigned_to", Long.class),
+                rs.getLong("reassigned")
+        ), id, reassignSelections, id);
+        evictAfterCommit(deleted.sectorIds());
+        return deleted;
+    }
+
+    /**
+     * Re-parents the sector, and with it its whole branch.
+     *
+     * @return false when nothing was moved: the sector does not exist or {@code parentId} is in its branch
+     */
+    public boolean move(long id, Long parentId) {
+        int moved = jdbcTemplate.update(MOVE_SQL, id, parentId, id, parentId);
+        if (moved > 0) {
+            evictAfterCommit(List.of(id));
+        }
+        return moved > 0;
+    }
+
+    private void evictAfterCommit(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(ids);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(ids);
+            }
+        });
+    }
+
+    private void evict(Collection<Long> ids) {
+        jakarta.persistence.Cache cache = entityManagerFactory.getCache();
+        ids.forEach(id -> cache.evict(Sector.class, id));
+    }
+
+    private static Long[] longs(Array array) throws SQLException {
+        return array != null ? (Long[]) array.getArray() : new Long[0];
+    }
+
+    private static String[] strings(Array array) throws SQLException {
+        return array != null ? (String[]) array.getArray() : new String[0];
+    }
+}
@@ -0,0 +1,59 @@
+package com.gatto.sector.repository;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Selection reads over R2DBC, for the {@code reactive} profile: a query waits on the socket,
+ * not on a thread. The pool is kept inside rather than published as a {@code ConnectionFactory}
+ * bean, because Spring Boot drops the JDBC {@code DataSource} that JPA and Flyway need as soon
+ * as one exists.
+ */
+@Repository
+@Profile("reactive")
+public class UserSectorSelectionReactiveRepository {
+
+    private static final String FIND_BY_USERNAME_SQL = """
+            SELECT s.sector_id
+            FROM user_sector_selection s JOIN app_user u ON u.id = s.user_id
+            WHERE u.username = $1""";
+
+    private final ConnectionPool pool;
+    private final DatabaseClient client;
+
+    public UserSectorSelectionReactiveRepository(@Value("${sectors.r2dbc.url}") String url,
+                                                 @Value("${sectors.r2dbc.username}") String username,
+                                                 @Value("${sectors.r2dbc.password}") String password,
+                                                 @Value("${sectors.r2dbc.pool.max-size:10}") int maxSize) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        this.pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .name("sectors-r2dbc")
+                .initialSize(1)
+                .maxSize(maxSize)
+                .build());
+        this.client = DatabaseClient.create(pool);
+    }
+
+    public Flux<Long> findSectorIdsByUsername(String username) {
+        return client.sql(FIND_BY_USERNAME_SQL)
+                .bind(0, username)
+                .map(row -> row.get(0, Long.class))
+                .all();
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.dispose();
+    }
+}
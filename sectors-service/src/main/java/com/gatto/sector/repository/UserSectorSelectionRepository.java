@@ -2,13 +2,26 @@ package com.gatto.sector.repository;
 
 import com.gatto.sector.entity.UserSectorSelection;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
-public interface UserSectorSelectionRepository extends JpaRepository<UserSectorSelection, Long> {
+public interface UserSectorSelectionRepository extends JpaRepository<UserSectorSelection, UserSectorSelection.Key>,
+        UserSectorSelectionRepositoryCustom {
 
-    List<UserSectorSelection> findByUsername(String username);
+    @Query("select s.id.sectorId from UserSectorSelection s where s.id.userId = :userId")
+    List<Long> findSectorIdsByUserId(Integer userId);
 
-    void deleteByUsername(String username);
+    @Query("select s.id.sectorId from UserSectorSelection s join s.user u where u.username = :username")
+    List<Long> findSectorIdsByUsername(String username);
+
+    @Query("select s.id.sectorId as sectorId, count(s) as selections from UserSectorSelection s group by s.id.sectorId")
+    List<SectorSelectionCount> countSelectionsBySector();
+
+    @Modifying
+    @Query("delete from UserSectorSelection s where s.id.userId = :userId and s.id.sectorId in :sectorIds")
+    int deleteByUserIdAndSectorIdIn(Integer userId, Collection<Long> sectorIds);
 
 }
@@ -0,0 +1,22 @@
+package com.gatto.sector.repository;
+
+import java.util.Collection;
+
+public interface UserSectorSelectionRepositoryCustom {
+
+    void insertAll(int userId, Collection<Long> sectorIds);
+
+    /**
+     * Streams every selection in primary key order. Needs a transaction, or the driver reads the
+     * whole table into memory before the first row.
+     */
+    void forEachSelection(SelectionHandler handler);
+
+    @FunctionalInterface
+    interface SelectionHandler {
+
+        void accept(int userId, long sectorId);
+
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.gatto.sector.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+
+/**
+ * Plain JDBC. Inserts: the key is assigned, so save() would merge, selecting every row before
+ * inserting it. The full scan: rows are streamed with a fetch size instead of becoming entities.
+ */
+@RequiredArgsConstructor
+class UserSectorSelectionRepositoryImpl implements UserSectorSelectionRepositoryCustom {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO user_sector_selection (user_id, sector_id) VALUES (?, ?)";
+
+    private static final String SCAN_SQL = "SELECT user_id, sector_id FROM user_sector_selection ORDER BY user_id, sector_id";
+
+    private static final int SCAN_FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertAll(int userId, Collection<Long> sectorIds) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, sectorIds, sectorIds.size(), (ps, sectorId) -> {
+            ps.setInt(1, userId);
+            ps.setLong(2, sectorId);
+        });
+    }
+
+    @Override
+    public void forEachSelection(SelectionHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SCAN_SQL);
+            statement.setFetchSize(SCAN_FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) rs -> handler.accept(rs.getInt(1), rs.getLong(2)));
+    }
+}
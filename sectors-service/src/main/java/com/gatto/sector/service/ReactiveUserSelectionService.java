@@ -0,0 +1,39 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.repository.UserSectorSelectionReactiveRepository;
+import com.gatto.sector.view.UserSelectionView;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * {@link UserSelectionService#getSelection} for the {@code reactive} profile: pending and cached
+ * selections are answered the same way, and a cache miss is read over R2DBC instead of JDBC.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveUserSelectionService {
+
+    private final UserSelectionService userSelectionService;
+    private final UserSectorSelectionReactiveRepository reactiveSelectionRepo;
+
+    /**
+     * Empty if the user has no selection.
+     */
+    public Mono<UserSelectionView> getSelection(String username) {
+        List<Long> known = userSelectionService.knownSelection(username);
+        Mono<List<Long>> sectorIds = known != null
+                ? Mono.just(known)
+                // the ETag is a hash of the whole selection, so it is read in full before answering
+                : reactiveSelectionRepo.findSectorIdsByUsername(username)
+                        .collectList()
+                        .map(stored -> userSelectionService.remember(username, stored));
+        return sectorIds
+                .filter(ids -> !ids.isEmpty())
+                .map(ids -> new UserSelectionView(username, ids));
+    }
+}
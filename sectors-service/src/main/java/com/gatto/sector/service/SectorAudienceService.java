@@ -0,0 +1,173 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.entity.AppUser;
+import com.gatto.sector.event.SectorSubtreeDeletedEvent;
+import com.gatto.sector.event.UserSelectionChangedEvent;
+import com.gatto.sector.repository.AppUserRepository;
+import com.gatto.sector.repository.UserSectorSelectionRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorAudienceView;
+import com.gatto.sector.view.SectorView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * The users who selected each sector, as compressed bitmaps of user ids, so the audience of a
+ * whole branch is an OR of a few bitmaps instead of a recursive join over the selections. Loaded
+ * once at startup and adjusted by every committed save and branch delete; like the stats, it
+ * only sees saves made through this instance.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SectorAudienceService implements SmartInitializingSingleton {
+
+    static final int MAX_PAGE = 1000;
+
+    private final UserSectorSelectionRepository userSelectionRepo;
+    private final AppUserRepository appUserRepository;
+    private final SectorCatalog catalog;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<Long, RoaringBitmap> audiences = new HashMap<>();
+    // bitmaps are not thread-safe; an update flips a few bits, so queries rarely wait for one
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    public void reload() {
+        Map<Long, RoaringBitmap> loaded = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> userSelectionRepo.forEachSelection((userId, sectorId) ->
+                loaded.computeIfAbsent(sectorId, id -> new RoaringBitmap()).add(userId)));
+        loaded.values().forEach(RoaringBitmap::runOptimize);
+
+        lock.writeLock().lock();
+        try {
+            audiences.clear();
+            audiences.putAll(loaded);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Loaded audiences for {} sectors", loaded.size());
+    }
+
+    @TransactionalEventListener
+    public void onSelectionChanged(UserSelectionChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (Long sectorId : event.addedSectorIds()) {
+                audiences.computeIfAbsent(sectorId, id -> new RoaringBitmap()).add(event.userId());
+            }
+            for (Long sectorId : event.removedSectorIds()) {
+                RoaringBitmap users = audiences.get(sectorId);
+                if (users != null) {
+                    users.remove(event.userId());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener
+    public void onSubtreeDeleted(SectorSubtreeDeletedEvent event) {
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap branch = new RoaringBitmap();
+            for (Long sectorId : event.sectorIds()) {
+                RoaringBitmap users = audiences.remove(sectorId);
+                if (users != null) {
+                    branch.or(users);
+                }
+            }
+            // everyone who had anything in the branch was given its parent
+            if (event.reassignedTo() != null && !branch.isEmpty()) {
+                audiences.computeIfAbsent(event.reassignedTo(), id -> new RoaringBitmap()).or(branch);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Users who selected the sector or any of its descendants, counted in full and listed from
+     * {@code offset}; {@code limit} 0 only counts them.
+     */
+    public Optional<SectorAudienceView> getAudience(Long sectorId, int offset, int limit) {
+        if (offset < 0 || limit < 0 || limit > MAX_PAGE) {
+            throw new IllegalArgumentException("offset must be >= 0 and limit between 0 and " + MAX_PAGE);
+        }
+        SectorTree tree = catalog.current();
+        if (!tree.contains(sectorId)) {
+            return Optional.empty();
+        }
+
+        RoaringBitmap users = audienceOf(sectorId, tree.descendants(sectorId));
+        return Optional.of(new SectorAudienceView(sectorId, users.getLongCardinality(),
+                usernames(page(users, offset, limit))));
+    }
+
+    private RoaringBitmap audienceOf(long sectorId, List<SectorView> descendants) {
+        List<RoaringBitmap> bitmaps = new ArrayList<>(descendants.size() + 1);
+        lock.readLock().lock();
+        try {
+            addIfPresent(bitmaps, sectorId);
+            for (SectorView descendant : descendants) {
+                addIfPresent(bitmaps, descendant.id());
+            }
+            // the result is a new bitmap, safe to read after the lock is released
+            return FastAggregation.or(bitmaps.toArray(RoaringBitmap[]::new));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addIfPresent(List<RoaringBitmap> bitmaps, long sectorId) {
+        RoaringBitmap users = audiences.get(sectorId);
+        if (users != null && !users.isEmpty()) {
+            bitmaps.add(users);
+        }
+    }
+
+    private static int[] page(RoaringBitmap users, int offset, int limit) {
+        if (limit == 0 || offset >= users.getCardinality()) {
+            return new int[0];
+        }
+        int[] page = new int[Math.min(limit, users.getCardinality() - offset)];
+        PeekableIntIterator iterator = users.getIntIterator();
+        iterator.advanceIfNeeded(users.select(offset));
+        for (int i = 0; i < page.length; i++) {
+            page[i] = iterator.next();
+        }
+        return page;
+    }
+
+    private List<String> usernames(int[] userIds) {
+        if (userIds.length == 0) {
+            return List.of();
+        }
+        Map<Integer, String> usernames = appUserRepository.findAllById(Arrays.stream(userIds).boxed().toList())
+                .stream()
+                .collect(Collectors.toMap(AppUser::getId, AppUser::getUsername));
+        return Arrays.stream(userIds).mapToObj(usernames::get).toList();
+    }
+}
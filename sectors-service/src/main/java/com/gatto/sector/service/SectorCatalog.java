@@ -0,0 +1,201 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.event.SectorCatalogChangedEvent;
+import com.gatto.sector.repository.SectorChangeLogRepository;
+import com.gatto.sector.repository.SectorRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorChangesView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the current {@link SectorTree} snapshot. Reads are lock-free; the snapshot is loaded
+ * once from the database and afterwards replaced when a sector mutation commits here, or when
+ * {@link #refresh()} finds changes committed on another instance. Its version is the change log
+ * version, so it doubles as the starting point for deltas.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SectorCatalog {
+
+    private final SectorRepository repository;
+    private final SectorChangeLogRepository changeLog;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicReference<SectorTree> tree = new AtomicReference<>();
+    // not synchronized: loading does JDBC and would pin a virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock moveLock = new ReentrantLock();
+
+    public SectorTree current() {
+        SectorTree snapshot = tree.get();
+        return snapshot != null ? snapshot : load();
+    }
+
+    /**
+     * Applies the change logged as {@code version} to the snapshot once the surrounding
+     * transaction commits, or immediately when there is no transaction.
+     */
+    public void afterCommit(long version, UnaryOperator<SectorTree> change) {
+        afterCommit(version, version, change);
+    }
+
+    /**
+     * Same for changes logged under the consecutive versions {@code firstVersion} to
+     * {@code version}.
+     */
+    public void afterCommit(long firstVersion, long version, UnaryOperator<SectorTree> change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(firstVersion, version, change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(firstVersion, version, change);
+            }
+        });
+    }
+
+    /**
+     * Serialises re-parenting: two moves checked against the same snapshot can each be valid and
+     * still close a cycle together. The lock is held until the surrounding transaction completes,
+     * by which time its own change is in the snapshot. Returns the snapshot to check against.
+     */
+    public SectorTree lockForMove() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Sector moves must run in a transaction");
+        }
+        if (!moveLock.isHeldByCurrentThread()) {
+            moveLock.lock();
+            // afterCompletion runs after every afterCommit, so the snapshot is already updated
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    moveLock.unlock();
+                }
+            });
+        }
+        return current();
+    }
+
+    /**
+     * Catches up with changes committed on other instances, which share the change log but not
+     * the commit hooks. Until then this instance serves its older snapshot under its older
+     * version, so a tag never names two trees. Caught-up changes are published like local ones,
+     * for the SSE stream.
+     */
+    @Scheduled(fixedDelayString = "${sectors.catalog.refresh-interval:PT5S}")
+    public void refresh() {
+        if (tree.get() == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            catchUp(tree.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void reload() {
+        lock.lock();
+        try {
+            tree.set(null);
+            load();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SectorTree load() {
+        lock.lock();
+        try {
+            SectorTree snapshot = tree.get();
+            if (snapshot == null) {
+                snapshot = read();
+                tree.set(snapshot);
+            }
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SectorTree read() {
+        // version first: a delta from it may repeat changes already loaded, never miss one
+        long version = changeLog.state().version();
+        SectorTree snapshot = SectorTree.of(version, repository.findAllViews());
+        log.debug("Loaded sector catalog size={} version={}", snapshot.size(), snapshot.version());
+        return snapshot;
+    }
+
+    /**
+     * Changes are applied strictly in version order, so every version stands for exactly one
+     * tree. Commit hooks of concurrent transactions may run out of order; a change that does not
+     * follow the snapshot directly is not applied on its own, the snapshot catches up from the
+     * change log instead, which has every committed version up to it.
+     */
+    private void apply(long firstVersion, long version, UnaryOperator<SectorTree> change) {
+        lock.lock();
+        try {
+            SectorTree snapshot = tree.get();
+            if (snapshot == null || version <= snapshot.version()) {
+                // not loaded yet, or already caught up past it
+                return;
+            }
+            if (firstVersion == snapshot.version() + 1) {
+                tree.set(change.apply(snapshot).atVersion(version));
+            } else {
+                catchUp(snapshot);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Brings the snapshot up to the change log, or reloads it when the log no longer reaches
+     * back to it, and publishes what changed. Must hold {@code lock}.
+     *
+     * @return what was applied, {@code fullResync} if reloaded; {@code null} if it was current
+     */
+    private SectorChangesView catchUp(SectorTree snapshot) {
+        SectorChangeLogRepository.State state = changeLog.state();
+        if (state.version() <= snapshot.version()) {
+            return null;
+        }
+        if (snapshot.version() >= state.compactedTo()) {
+            List<SectorChangeView> changes = changeLog.findSince(snapshot.version(), SectorService.MAX_CHANGES + 1);
+            // a compaction or import between the two reads would leave a hole in the changes
+            if (changes.size() <= SectorService.MAX_CHANGES
+                    && snapshot.version() >= changeLog.state().compactedTo()) {
+                // versions commit in order, so the changes read are every version up to the last one
+                long version = changes.isEmpty()
+                        ? state.version()
+                        : Math.max(state.version(), changes.get(changes.size() - 1).version());
+                tree.set(snapshot.withChanges(changes).atVersion(version));
+                log.debug("Caught up sector catalog from version={} to version={}", snapshot.version(), version);
+                // may repeat a change this instance publishes itself, which clients apply idempotently
+                eventPublisher.publishEvent(new SectorCatalogChangedEvent(version, false, changes));
+                return new SectorChangesView(version, false, changes);
+            }
+        }
+        SectorTree reloaded = read();
+        tree.set(reloaded);
+        eventPublisher.publishEvent(new SectorCatalogChangedEvent(reloaded.version(), true, List.of()));
+        return new SectorChangesView(reloaded.version(), true, List.of());
+    }
+}
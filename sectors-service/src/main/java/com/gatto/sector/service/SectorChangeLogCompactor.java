@@ -0,0 +1,35 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.repository.SectorChangeLogRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Keeps the sector change log bounded. Clients that last synced before the retention window
+ * get a full resync instead of a delta.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SectorChangeLogCompactor {
+
+    private final SectorChangeLogRepository changeLog;
+
+    @Value("${sectors.changes.retention:P7D}")
+    private Duration retention;
+
+    @Scheduled(fixedDelayString = "${sectors.changes.compaction-interval:PT1H}")
+    @Transactional
+    public void compact() {
+        if (changeLog.compact(Instant.now().minus(retention))) {
+            log.info("Compacted sector change log older than {}", retention);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.gatto.sector.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gatto.sector.event.SectorCatalogChangedEvent;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorChangesView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Pushes committed catalog changes to SSE subscribers.
+ * <p>
+ * Changes are collected for a short window and sent as one {@code changes} event holding the
+ * latest state per sector, so a burst of edits costs each subscriber one write. Every event is
+ * encoded once and queued per subscriber; a small shared pool drains the queues, because
+ * {@link SseEmitter#send} is synchronized and would pin a virtual thread per subscriber. A
+ * subscriber whose queue is full is dropped; its {@code EventSource} reconnects with
+ * {@code Last-Event-ID} and catches up from the change log.
+ */
+@Component
+@Slf4j
+public class SectorEventBroadcaster {
+
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final Counter dropped;
+    private final Executor senders;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final Map<Long, SectorChangeView> pending = new LinkedHashMap<>();
+    private long pendingVersion;
+    private boolean pendingResync;
+
+    @Autowired
+    public SectorEventBroadcaster(ObjectMapper objectMapper,
+                                  MeterRegistry registry,
+                                  @Value("${sectors.events.buffer-size:64}") int bufferSize,
+                                  @Value("${sectors.events.timeout:PT30M}") Duration timeout,
+                                  @Value("${sectors.events.senders:4}") int senders) {
+        this(objectMapper, registry, bufferSize, timeout, senderPool(senders));
+    }
+
+    SectorEventBroadcaster(ObjectMapper objectMapper, MeterRegistry registry, int bufferSize,
+                           Duration timeout, Executor senders) {
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeout.toMillis();
+        this.senders = senders;
+        this.dropped = registry.counter("sectors.events.dropped");
+        Gauge.builder("sectors.events.subscribers", subscribers, Set::size).register(registry);
+    }
+
+    private static ExecutorService senderPool(int size) {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, task -> {
+            Thread thread = new Thread(task, "sse-sender-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers a subscriber. When the client reconnects with the id of the last event it saw,
+     * {@code catchUp} reads what it missed and that is sent first. It is read only after the
+     * subscriber is registered, so no batch flushed meanwhile is lost; such batches are held
+     * back and sent after it, except those the catch-up already covers.
+     */
+    public SseEmitter subscribe(Supplier<SectorChangesView> catchUp) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, catchUp != null);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+
+        if (catchUp != null) {
+            try {
+                subscriber.release(catchUp.get());
+            } catch (RuntimeException e) {
+                subscribers.remove(subscriber);
+                throw e;
+            }
+        }
+        return emitter;
+    }
+
+    // changes another instance committed are published by the catalog outside a transaction
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(SectorCatalogChangedEvent event) {
+        pendingLock.lock();
+        try {
+            pendingVersion = Math.max(pendingVersion, event.version());
+            if (event.fullResync()) {
+                pending.clear();
+                pendingResync = true;
+            } else if (!pendingResync) {
+                for (SectorChangeView change : event.changes()) {
+                    // re-inserted so the batch stays in version order
+                    pending.remove(change.id());
+                    pending.put(change.id(), change);
+                }
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sectors.events.coalesce-window:PT0.25S}")
+    public void flush() {
+        SectorChangesView batch;
+        pendingLock.lock();
+        try {
+            if (pending.isEmpty() && !pendingResync) {
+                return;
+            }
+            batch = new SectorChangesView(pendingVersion, pendingResync, new ArrayList<>(pending.values()));
+            pending.clear();
+            pendingResync = false;
+        } finally {
+            pendingLock.unlock();
+        }
+        Set<DataWithMediaType> event = encode(batch);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(batch.version(), event);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sectors.events.heartbeat:PT20S}")
+    public void heartbeat() {
+        // also how disconnected clients are noticed: the write fails
+        broadcast(SseEmitter.event().comment("heartbeat").build());
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (senders instanceof ExecutorService pool) {
+            pool.shutdownNow();
+        }
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    private void broadcast(Set<DataWithMediaType> event) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private Set<DataWithMediaType> encode(SectorChangesView batch) {
+        try {
+            return SseEmitter.event()
+                    .id(String.valueOf(batch.version()))
+                    .name(batch.fullResync() ? "resync" : "changes")
+                    .data(objectMapper.writeValueAsString(batch), MediaType.APPLICATION_JSON)
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode sector changes", e);
+        }
+    }
+
+    private final class Subscriber implements Runnable {
+
+        private final SseEmitter emitter;
+        private final Queue<Set<DataWithMediaType>> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        // batches flushed while the catch-up is read, by version; null once it has been sent
+        private List<Map.Entry<Long, Set<DataWithMediaType>>> held;
+
+        private Subscriber(SseEmitter emitter, boolean catchingUp) {
+            this.emitter = emitter;
+            this.held = catchingUp ? new ArrayList<>() : null;
+        }
+
+        synchronized void offer(long version, Set<DataWithMediaType> event) {
+            if (held != null) {
+                held.add(Map.entry(version, event));
+            } else {
+                offer(event);
+            }
+        }
+
+        synchronized void release(SectorChangesView catchUp) {
+            // an empty catch-up still means the client is current up to its version
+            long covered = catchUp != null ? catchUp.version() : -1;
+            if (catchUp != null && (catchUp.fullResync() || !catchUp.changes().isEmpty())) {
+                offer(encode(catchUp));
+            }
+            for (Map.Entry<Long, Set<DataWithMediaType>> event : held) {
+                if (event.getKey() > covered) {
+                    offer(event.getValue());
+                }
+            }
+            held = null;
+        }
+
+        void offer(Set<DataWithMediaType> event) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                // slow consumer: completed from the sender, never from the flushing thread
+                closed = true;
+                subscribers.remove(this);
+                dropped.increment();
+                log.debug("Dropped SSE subscriber with {} queued events", queue.size());
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                senders.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (closed) {
+                    queue.clear();
+                    emitter.complete();
+                    return;
+                }
+                Set<DataWithMediaType> event;
+                while (!closed && (event = queue.poll()) != null) {
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                closed = true;
+                subscribers.remove(this);
+                queue.clear();
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.gatto.sector.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gatto.sector.event.SectorCatalogChangedEvent;
+import com.gatto.sector.repository.SectorBulkRepository;
+import com.gatto.sector.repository.SectorChangeLogRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorImportView;
+import com.gatto.sector.view.SectorView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk catalog import. The payload is parsed and validated in memory against the current
+ * catalog before a database connection is taken, then loaded with a single COPY.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SectorImportService {
+
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    public static final MediaType CSV = MediaType.parseMediaType("text/csv");
+
+    private final SectorBulkRepository bulkRepository;
+    private final SectorChangeLogRepository changeLog;
+    private final SectorCatalog catalog;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public SectorImportView importSectors(InputStream body, MediaType contentType) throws IOException {
+        List<SectorView> rows = CSV.includes(contentType)
+                ? readCsv(body, contentType.getCharset())
+                : readNdjson(body);
+        List<SectorView> ordered = parentsFirst(rows, catalog.current());
+
+        Long imported = transactionTemplate.execute(status -> {
+            long copied = bulkRepository.copyIn(ordered);
+            // too many rows to log one by one; clients behind this version reload the catalog
+            long version = changeLog.resync();
+            catalog.afterCommit(version, tree -> tree.withAll(ordered));
+            eventPublisher.publishEvent(new SectorCatalogChangedEvent(version, true, List.of()));
+            return copied;
+        });
+        log.info("Imported {} sectors", imported);
+
+        return new SectorImportView(imported != null ? imported : 0L);
+    }
+
+    private List<SectorView> readNdjson(InputStream body) throws IOException {
+        List<SectorView> rows = new ArrayList<>();
+        try (MappingIterator<SectorView> lines = objectMapper.readerFor(SectorView.class).readValues(body)) {
+            while (lines.hasNextValue()) {
+                rows.add(lines.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed import payload: " + e.getOriginalMessage(), e);
+        }
+        return rows;
+    }
+
+    private static List<SectorView> readCsv(InputStream body, Charset charset) throws IOException {
+        List<SectorView> rows = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(body, charset != null ? charset : StandardCharsets.UTF_8));
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && line.startsWith("id"))) {
+                continue;
+            }
+            List<String> fields = splitCsv(line);
+            if (fields.size() != 3) {
+                throw new IllegalArgumentException("Expected id,name,parentId on line " + lineNumber);
+            }
+            String parentId = fields.get(2).trim();
+            rows.add(new SectorView(
+                    Long.parseLong(fields.get(0).trim()),
+                    fields.get(1),
+                    parentId.isEmpty() ? null : Long.parseLong(parentId)
+            ));
+        }
+        return rows;
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Validates the rows and orders them so that every parent is copied before its children,
+     * which the non-deferrable parent_id foreign key requires.
+     */
+    static List<SectorView> parentsFirst(List<SectorView> rows, SectorTree tree) {
+        Map<Long, SectorView> byId = new HashMap<>(rows.size() * 2);
+        for (SectorView row : rows) {
+            if (row.id() == null || row.name() == null || row.name().isBlank()) {
+                throw new IllegalArgumentException("Sector id and name are required");
+            }
+            if (tree.contains(row.id())) {
+                throw new IllegalArgumentException("Sector " + row.id() + " already exists");
+            }
+            if (byId.putIfAbsent(row.id(), row) != null) {
+                throw new IllegalArgumentException("Duplicate sector id " + row.id());
+            }
+        }
+
+        List<SectorView> ordered = new ArrayList<>(rows.size());
+        Set<Long> emitted = new HashSet<>(rows.size() * 2);
+        Deque<SectorView> chain = new ArrayDeque<>();
+        Set<Long> onChain = new HashSet<>();
+
+        for (SectorView row : rows) {
+            SectorView current = row;
+            while (current != null && !emitted.contains(current.id())) {
+                if (!onChain.add(current.id())) {
+                    throw new IllegalArgumentException("Sector " + current.id() + " is its own ancestor");
+                }
+                chain.push(current);
+
+                Long parentId = current.parentId();
+                if (parentId == null || tree.contains(parentId)) {
+                    current = null;
+                } else {
+                    current = byId.get(parentId);
+                    if (current == null) {
+                        throw new IllegalArgumentException("Parent sector " + parentId + " does not exist");
+                    }
+                }
+            }
+            while (!chain.isEmpty()) {
+                SectorView next = chain.pop();
+                emitted.add(next.id());
+                ordered.add(next);
+            }
+            onChain.clear();
+        }
+        return ordered;
+    }
+}
@@ -1,40 +1,114 @@
 package com.gatto.sector.service;
 
 import com.gatto.sector.entity.Sector;
+import com.gatto.sector.error.SectorCycleException;
 import com.gatto.sector.error.SectorDoesNotExistException;
+import com.gatto.sector.event.SectorCatalogChangedEvent;
+import com.gatto.sector.event.SectorSubtreeDeletedEvent;
+import com.gatto.sector.repository.SectorChangeLogRepository;
 import com.gatto.sector.repository.SectorRepository;
+import com.gatto.sector.repository.SectorSubtreeRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorBatchView;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorChangesView;
+import com.gatto.sector.view.SectorDeleteView;
+import com.gatto.sector.view.SectorOperationView;
+import com.gatto.sector.view.SectorSearchView;
 import com.gatto.sector.view.SectorView;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
+@Timed("sectors.service")
 @RequiredArgsConstructor
 @Slf4j
 public class SectorService {
+    // beyond this a client is better off reloading the catalog than replaying the log
+    static final int MAX_CHANGES = 1000;
+    static final int MAX_BATCH = 1000;
+    static final int MAX_SEARCH_RESULTS = 50;
+
     private final SectorRepository repository;
+    private final SectorCatalog catalog;
+    private final SectorChangeLogRepository changeLog;
+    private final SectorSubtreeRepository subtreeRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
 
     public List<SectorView> getAllSectors() {
-        return repository.findAll().stream()
-                .map(sector -> new SectorView(
-                        sector.getId(),
-                        sector.getName(),
-                        sector.getParent() != null ? sector.getParent().getId() : null
-                ))
-                .toList();
+        return catalog.current().toViews();
+    }
+
+    public SectorTree getCatalog() {
+        return catalog.current();
+    }
+
+    public long catalogVersion() {
+        return catalog.current().version();
     }
 
     public Optional<SectorView> findById(Long id) {
-        return repository.findById(id).map(sector -> new SectorView(
-                sector.getId(),
-                sector.getName(),
-                sector.getParent() != null ? sector.getParent().getId() : null
-        ));
+        return catalog.current().find(id);
+    }
+
+    public Optional<List<SectorView>> findDescendants(Long id) {
+        SectorTree tree = catalog.current();
+        return tree.contains(id) ? Optional.of(tree.descendants(id)) : Optional.empty();
+    }
+
+    public Optional<List<SectorView>> findAncestors(Long id) {
+        SectorTree tree = catalog.current();
+        return tree.contains(id) ? Optional.of(tree.ancestors(id)) : Optional.empty();
+    }
+
+    /**
+     * Typeahead search over the snapshot's name index; never touches the database.
+     */
+    public List<SectorSearchView> search(String query, int limit) {
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_SEARCH_RESULTS);
+        }
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        SectorTree tree = catalog.current();
+        return tree.search(query, limit).stream()
+                .map(hit -> new SectorSearchView(hit.id(), hit.name(), hit.parentId(), tree.ancestors(hit.id())))
+                .toList();
+    }
+
+    /**
+     * Latest state of every sector changed after {@code since}, or a full resync signal when
+     * the log no longer reaches back that far.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public SectorChangesView getChanges(long since) {
+        SectorChangeLogRepository.State state = changeLog.state();
+        if (since < state.compactedTo() || since > state.version()) {
+            return new SectorChangesView(state.version(), true, List.of());
+        }
+        if (since == state.version()) {
+            return new SectorChangesView(state.version(), false, List.of());
+        }
+
+        List<SectorChangeView> changes = changeLog.findSince(since, MAX_CHANGES + 1);
+        if (changes.size() > MAX_CHANGES) {
+            return new SectorChangesView(state.version(), true, List.of());
+        }
+        return new SectorChangesView(state.version(), false, changes);
     }
 
     @Transactional
@@ -42,6 +116,9 @@ public class SectorService {
         Sector sector = repository.findById(id)
                 .orElseThrow(SectorDoesNotExistException::new);
         repository.delete(sector);
+        long version = changeLog.appendDelete(id);
+        catalog.afterCommit(version, tree -> tree.without(id));
+        publish(new SectorChangeView(version, id, null, null, true));
         log.debug("Deleted resource id={}", id);
     }
 
@@ -59,11 +136,15 @@ public class SectorService {
         Sector saved = repository.save(entity);
         log.debug("Created sector id={} name={}", saved.getId(), saved.getName());
 
-        return new SectorView(
+        SectorView created = new SectorView(
                 saved.getId(),
                 saved.getName(),
                 saved.getParent() != null ? saved.getParent().getId() : null
         );
+        long version = changeLog.appendUpsert(created);
+        catalog.afterCommit(version, tree -> tree.with(created));
+        publish(upserted(version, created));
+        return created;
     }
 
     @Transactional
@@ -78,8 +159,9 @@ public class SectorService {
         existing.setName(view.name());
 
         if (view.parentId() != null) {
-            if (view.parentId().equals(id)) {
-                throw new IllegalArgumentException("Sector cannot be parent of itself");
+            if (!view.parentId().equals(parentIdOf(existing))
+                    && catalog.lockForMove().isAtOrAbove(id, view.parentId(), Map.of())) {
+                throw new SectorCycleException(id, view.parentId());
             }
             Sector parent = repository.findById(view.parentId())
                     .orElseThrow(SectorDoesNotExistException::new);
@@ -96,8 +178,198 @@ public class SectorService {
                 saved.getParent() != null ? saved.getParent().getId() : null
         );
 
-        return SectorView.fromEntity(saved);
+        SectorView updated = SectorView.fromEntity(saved);
+        long version = changeLog.appendUpsert(updated);
+        catalog.afterCommit(version, tree -> tree.with(updated));
+        publish(upserted(version, updated));
+        return updated;
+    }
+
+    /**
+     * Applies the operations in order, all or nothing. New sectors take their ids from the pooled
+     * sequence, so nothing is written until the single flush, where the inserts go out as JDBC
+     * batches; the whole batch is then logged in one statement.
+     */
+    @Transactional
+    public SectorBatchView applyBatch(List<SectorOperationView> operations) {
+        if (operations == null || operations.isEmpty() || operations.size() > MAX_BATCH) {
+            throw new IllegalArgumentException("A batch holds 1 to " + MAX_BATCH + " operations");
+        }
+
+        Map<String, Sector> created = new LinkedHashMap<>();
+        List<Sector> upserted = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        // parents set so far in this batch, checked before the snapshot's
+        Map<Long, Long> moved = new HashMap<>();
+        SectorTree snapshot = null;
+        for (SectorOperationView operation : operations) {
+            if (operation.type() == null) {
+                throw new IllegalArgumentException("Operation type is required");
+            }
+            switch (operation.type()) {
+                case CREATE -> {
+                    if (operation.id() != null) {
+                        throw new IllegalArgumentException("A created sector gets its id from the server");
+                    }
+                    Sector entity = new Sector();
+                    entity.setName(requireName(operation));
+                    entity.setParent(resolveParent(operation, created));
+                    repository.save(entity);
+                    moved.put(entity.getId(), parentIdOf(entity));
+                    if (operation.ref() != null && created.putIfAbsent(operation.ref(), entity) != null) {
+                        throw new IllegalArgumentException("Duplicate ref " + operation.ref());
+                    }
+                    upserted.add(entity);
+                }
+                case UPDATE -> {
+                    Sector existing = findForBatch(operation);
+                    existing.setName(requireName(operation));
+                    Sector parent = resolveParent(operation, created);
+                    if (parent != null && !parent.getId().equals(parentIdOf(existing))) {
+                        snapshot = snapshot != null ? snapshot : catalog.lockForMove();
+                        if (snapshot.isAtOrAbove(existing.getId(), parent.getId(), moved)) {
+                            throw new SectorCycleException(existing.getId(), parent.getId());
+                        }
+                    }
+                    existing.setParent(parent);
+                    moved.put(existing.getId(), parentIdOf(existing));
+                    upserted.add(existing);
+                }
+                case DELETE -> {
+                    Sector existing = findForBatch(operation);
+                    repository.delete(existing);
+                    upserted.removeIf(sector -> sector == existing);
+                    created.values().removeIf(sector -> sector == existing);
+                    deleted.add(existing.getId());
+                }
+            }
+        }
+        repository.flush();
+
+        // one entry per sector, in the order the batch first touched it
+        Map<Long, SectorChangeView> latest = new LinkedHashMap<>();
+        for (Sector sector : upserted) {
+            latest.putIfAbsent(sector.getId(), upserted(0, SectorView.fromEntity(sector)));
+        }
+        for (Long id : deleted) {
+            latest.put(id, new SectorChangeView(0, id, null, null, true));
+        }
+        long version = logAll(new ArrayList<>(latest.values()));
+
+        Map<String, Long> ids = new LinkedHashMap<>();
+        created.forEach((ref, sector) -> ids.put(ref, sector.getId()));
+        log.debug("Applied batch of {} operations as version {}", operations.size(), version);
+        return new SectorBatchView(version, ids);
+    }
+
+    /**
+     * Deletes the sector with its whole branch in one statement, together with the selections
+     * on it; with {@code reassignSelections} those users get the branch's parent instead.
+     */
+    @Transactional
+    public SectorDeleteView deleteSubtree(Long id, boolean reassignSelections) {
+        SectorSubtreeRepository.DeletedSubtree deleted = subtreeRepository.deleteSubtree(id, reassignSelections);
+        if (deleted.sectorIds().isEmpty()) {
+            throw new SectorDoesNotExistException();
+        }
+        List<SectorChangeView> tombstones = deleted.sectorIds().stream()
+                .map(sectorId -> new SectorChangeView(0, sectorId, null, null, true))
+                .toList();
+        long version = logAll(tombstones);
+        eventPublisher.publishEvent(new SectorSubtreeDeletedEvent(
+                deleted.sectorIds(), deleted.usernames(), deleted.reassignedTo(), deleted.reassigned()));
+        log.debug("Deleted subtree id={} sectors={} reassigned={}", id, deleted.sectorIds().size(), deleted.reassigned());
+        return new SectorDeleteView(version, deleted.sectorIds(), deleted.reassigned());
+    }
+
+    /**
+     * Re-parents the sector, and with it its branch, in one statement.
+     */
+    @Transactional
+    public SectorView move(Long id, Long parentId) {
+        SectorTree tree = catalog.lockForMove();
+        SectorView sector = tree.find(id).orElseThrow(SectorDoesNotExistException::new);
+        if (parentId != null) {
+            if (!tree.contains(parentId)) {
+                throw new SectorDoesNotExistException();
+            }
+            if (tree.isAtOrAbove(id, parentId, Map.of())) {
+                throw new SectorCycleException(id, parentId);
+            }
+        }
+        if (!subtreeRepository.move(id, parentId)) {
+            // the snapshot was stale: another instance deleted the sector or moved the parent into its branch
+            throw parentId != null ? new SectorCycleException(id, parentId) : new SectorDoesNotExistException();
+        }
+
+        SectorView moved = new SectorView(id, sector.name(), parentId);
+        long version = changeLog.appendUpsert(moved);
+        catalog.afterCommit(version, snapshot -> snapshot.with(moved));
+        publish(upserted(version, moved));
+        log.debug("Moved sector id={} parentId={}", id, parentId);
+        return moved;
+    }
+
+    /**
+     * Logs the changes in one append, then applies and publishes them with their versions.
+     *
+     * @return the version of the last change
+     */
+    private long logAll(List<SectorChangeView> changes) {
+        long version = changeLog.appendAll(changes);
+        List<SectorChangeView> logged = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            SectorChangeView change = changes.get(i);
+            logged.add(new SectorChangeView(version - changes.size() + 1 + i,
+                    change.id(), change.name(), change.parentId(), change.deleted()));
+        }
+        catalog.afterCommit(version - changes.size() + 1, version, tree -> tree.withChanges(logged));
+        eventPublisher.publishEvent(new SectorCatalogChangedEvent(version, false, logged));
+        return version;
+    }
+
+    private Sector findForBatch(SectorOperationView operation) {
+        if (operation.id() == null) {
+            throw new IllegalArgumentException(operation.type() + " needs the sector id");
+        }
+        return repository.findById(operation.id())
+                .orElseThrow(SectorDoesNotExistException::new);
     }
 
+    private Sector resolveParent(SectorOperationView operation, Map<String, Sector> created) {
+        if (operation.parentRef() != null) {
+            if (operation.parentId() != null) {
+                throw new IllegalArgumentException("Give either parentId or parentRef, not both");
+            }
+            Sector parent = created.get(operation.parentRef());
+            if (parent == null) {
+                throw new IllegalArgumentException("Unknown ref " + operation.parentRef());
+            }
+            return parent;
+        }
+        if (operation.parentId() == null) {
+            return null;
+        }
+        return repository.findById(operation.parentId())
+                .orElseThrow(SectorDoesNotExistException::new);
+    }
 
+    private static Long parentIdOf(Sector sector) {
+        return sector.getParent() != null ? sector.getParent().getId() : null;
+    }
+
+    private static String requireName(SectorOperationView operation) {
+        if (operation.name() == null || operation.name().isBlank()) {
+            throw new IllegalArgumentException("Sector name is required");
+        }
+        return operation.name();
+    }
+
+    private void publish(SectorChangeView change) {
+        eventPublisher.publishEvent(new SectorCatalogChangedEvent(change.version(), false, List.of(change)));
+    }
+
+    private static SectorChangeView upserted(long version, SectorView sector) {
+        return new SectorChangeView(version, sector.id(), sector.name(), sector.parentId(), false);
+    }
 }
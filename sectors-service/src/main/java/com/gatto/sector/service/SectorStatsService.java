@@ -0,0 +1,90 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.event.SectorSubtreeDeletedEvent;
+import com.gatto.sector.event.UserSelectionChangedEvent;
+import com.gatto.sector.repository.SectorSelectionCount;
+import com.gatto.sector.repository.UserSectorSelectionRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorStatsView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Number of user selections per sector, kept in memory and adjusted by every committed
+ * selection save. The counts are loaded once at startup, before the server accepts requests;
+ * they only see saves made through this instance.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SectorStatsService implements SmartInitializingSingleton {
+
+    private final UserSectorSelectionRepository userSelectionRepo;
+    private final SectorCatalog catalog;
+
+    private final Map<Long, LongAdder> selections = new ConcurrentHashMap<>();
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    public void reload() {
+        reloadLock.lock();
+        try {
+            selections.clear();
+            for (SectorSelectionCount count : userSelectionRepo.countSelectionsBySector()) {
+                counter(count.getSectorId()).add(count.getSelections());
+            }
+            log.debug("Loaded selection counts for {} sectors", selections.size());
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener
+    public void onSelectionChanged(UserSelectionChangedEvent event) {
+        event.addedSectorIds().forEach(sectorId -> counter(sectorId).increment());
+        event.removedSectorIds().forEach(sectorId -> counter(sectorId).decrement());
+    }
+
+    @TransactionalEventListener
+    public void onSubtreeDeleted(SectorSubtreeDeletedEvent event) {
+        event.sectorIds().forEach(selections::remove);
+        if (event.reassignedTo() != null) {
+            counter(event.reassignedTo()).add(event.reassigned());
+        }
+    }
+
+    public List<SectorStatsView> getStats() {
+        SectorTree tree = catalog.current();
+        long[] subtree = tree.subtreeSums(this::selectionsOf);
+
+        List<SectorStatsView> stats = new ArrayList<>(tree.size());
+        SectorTree.Cursor cursor = tree.cursor();
+        for (int i = 0; cursor.next(); i++) {
+            stats.add(new SectorStatsView(cursor.id(), selectionsOf(cursor.id()), subtree[i]));
+        }
+        return stats;
+    }
+
+    private long selectionsOf(long sectorId) {
+        LongAdder count = selections.get(sectorId);
+        return count != null ? count.sum() : 0L;
+    }
+
+    private LongAdder counter(Long sectorId) {
+        return selections.computeIfAbsent(sectorId, id -> new LongAdder());
+    }
+}
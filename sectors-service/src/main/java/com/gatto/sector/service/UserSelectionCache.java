@@ -0,0 +1,64 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.event.SectorSubtreeDeletedEvent;
+import com.gatto.sector.event.UserSelectionChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Stored selection per username as a {@code long[]}. Filled on read and replaced when a save
+ * commits on this instance; the expiry bounds how long saves made elsewhere stay invisible.
+ */
+@Component
+public class UserSelectionCache {
+
+    private final Cache<String, long[]> cache;
+
+    public UserSelectionCache(@Value("${sectors.cache.selection.max-size:100000}") long maxSize,
+                              @Value("${sectors.cache.selection.expire-after-write:10m}") Duration expireAfterWrite,
+                              MeterRegistry registry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "user.selections");
+    }
+
+    public long[] get(String username) {
+        return cache.getIfPresent(username);
+    }
+
+    /**
+     * Caches a selection read from the database unless a committed save got there first,
+     * and returns whichever value is cached. A read that started before the save must not
+     * overwrite it.
+     */
+    public long[] putIfAbsent(String username, long[] sectorIds) {
+        long[] cached = cache.asMap().putIfAbsent(username, sectorIds);
+        return cached != null ? cached : sectorIds;
+    }
+
+    @TransactionalEventListener
+    public void onSelectionChanged(UserSelectionChangedEvent event) {
+        List<Long> sectorIds = event.sectorIds();
+        if (sectorIds.isEmpty()) {
+            cache.invalidate(event.username());
+        } else {
+            cache.put(event.username(), sectorIds.stream().mapToLong(Long::longValue).toArray());
+        }
+    }
+
+    @TransactionalEventListener
+    public void onSubtreeDeleted(SectorSubtreeDeletedEvent event) {
+        cache.invalidateAll(event.usernames());
+    }
+}
@@ -0,0 +1,92 @@
+package com.gatto.sector.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link UserSelectionService#flushPending()} for the write-behind mode on a thread of its
+ * own, so a slow or unreachable database holds back only the flush and not the other scheduled
+ * work. While the database is unavailable the delay between flushes doubles, up to
+ * {@code max-backoff}.
+ */
+@Component
+@Slf4j
+public class UserSelectionFlusher {
+
+    private final UserSelectionService userSelectionService;
+    private final Duration interval;
+    private final Duration maxBackoff;
+    private final ScheduledExecutorService scheduler;
+
+    // only read and written by the flush thread
+    private Duration delay;
+
+    public UserSelectionFlusher(UserSelectionService userSelectionService,
+                                UserSelectionWriteBuffer writeBuffer,
+                                @Value("${sectors.selections.write-behind.flush-interval:PT1S}") Duration interval,
+                                @Value("${sectors.selections.write-behind.max-backoff:PT30S}") Duration maxBackoff) {
+        if (interval.isNegative() || interval.isZero() || maxBackoff.compareTo(interval) < 0) {
+            throw new IllegalArgumentException("write-behind flush-interval must be positive and at most max-backoff");
+        }
+        this.userSelectionService = userSelectionService;
+        this.interval = interval;
+        this.maxBackoff = maxBackoff;
+        this.delay = interval;
+        this.scheduler = writeBuffer.enabled() ? Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "selection-flusher");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        if (scheduler != null) {
+            scheduler.schedule(this::run, interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void run() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Flushing buffered selections failed", e);
+        } finally {
+            if (!scheduler.isShutdown()) {
+                scheduler.schedule(this::run, delay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Flushes once and returns the delay until the next flush: the interval, or twice the last
+     * delay if the database was unavailable.
+     */
+    Duration flush() {
+        if (userSelectionService.flushPending()) {
+            delay = interval;
+        } else {
+            delay = delay.multipliedBy(2).compareTo(maxBackoff) < 0 ? delay.multipliedBy(2) : maxBackoff;
+            log.warn("Database unavailable, next flush of buffered selections in {}", delay);
+        }
+        return delay;
+    }
+
+    /**
+     * Stops the schedule, then writes what is still pending, before the data source is closed.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        if (!userSelectionService.flushPending()) {
+            log.error("Database unavailable at shutdown, buffered selections were not written");
+        }
+    }
+}
@@ -1,56 +1,297 @@
 package com.gatto.sector.service;
 
-import com.gatto.sector.entity.Sector;
-import com.gatto.sector.entity.UserSectorSelection;
 import com.gatto.sector.error.SectorDoesNotExistException;
+import com.gatto.sector.error.StaleSelectionException;
+import com.gatto.sector.event.UserSelectionChangedEvent;
+import com.gatto.sector.repository.AppUserRepository;
 import com.gatto.sector.repository.SectorRepository;
 import com.gatto.sector.repository.UserSectorSelectionRepository;
+import com.gatto.sector.tree.SectorTree;
 import com.gatto.sector.view.UserSelectionView;
+import io.micrometer.core.annotation.Timed;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
+@Timed("sectors.service")
 @RequiredArgsConstructor
+@Slf4j
 public class UserSelectionService {
 
     private final UserSectorSelectionRepository userSelectionRepo;
+    private final AppUserRepository appUserRepository;
     private final SectorRepository sectorRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserSelectionCache selectionCache;
+    private final UserSelectionWriteBuffer writeBuffer;
+    private final SectorCatalog catalog;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final int FLUSH_ATTEMPTS = 2;
+
+    // the scheduled flush and the one at shutdown must not write the same batch twice
+    private final ReentrantLock flushLock = new ReentrantLock();
 
-    @Transactional
     public UserSelectionView saveSelection(UserSelectionView view) {
+        return saveSelection(view, null);
+    }
+
+    /**
+     * Writes the selection and returns it once committed; in write-behind mode returns as soon as
+     * it is validated and buffered, and {@link #flushPending()} writes it later. A conditional
+     * save is buffered only if a selection is already pending, else it is written through. With
+     * {@code expectedVersions}, the current selection's {@link #versionOf version} must be one of
+     * them, {@code "*"} matching any existing selection.
+     *
+     * @throws StaleSelectionException if it is not
+     */
+    public UserSelectionView saveSelection(UserSelectionView view, Collection<String> expectedVersions) {
         String username = view.username();
+        Set<Long> requested = new LinkedHashSet<>(view.sectorIds());
+
+        // only a pending save is authoritative here; the cache may miss a save made on another
+        // instance, so the stored selection is compared inside the write, under the row lock
+        List<Long> pending = writeBuffer.pending(username);
+        if (pending != null && requested.size() == pending.size() && requested.containsAll(pending)) {
+            checkVersion(username, pending, expectedVersions);
+            return new UserSelectionView(username, List.copyOf(requested));
+        }
 
-        userSelectionRepo.deleteByUsername(username);
+        if (writeBuffer.enabled()) {
+            validateAgainstCatalog(requested);
+            List<Long> saved = List.copyOf(requested);
+            // a conditional save is compared with the pending selection in the same step that
+            // replaces it; with none pending, it is compared with the stored one under the row lock
+            boolean buffered = expectedVersions == null
+                    ? writeBuffer.offer(username, saved)
+                    : writeBuffer.replace(username, saved, current -> checkVersion(username, current, expectedVersions));
+            if (buffered) {
+                return new UserSelectionView(username, saved);
+            }
+            log.debug("Writing selection username={} through", username);
+        }
 
-        for (Long sectorId : view.sectorIds()) {
-            Sector sector = sectorRepository.findById(sectorId)
-                    .orElseThrow(SectorDoesNotExistException::new);
+        return transactionTemplate.execute(status -> {
+            if (!requested.isEmpty() && sectorRepository.findExistingIds(requested).size() != requested.size()) {
+                throw new SectorDoesNotExistException();
+            }
+            return write(username, requested, expectedVersions);
+        });
+    }
 
-            UserSectorSelection row = new UserSectorSelection();
-            row.setUsername(username);
-            row.setSector(sector);
-            userSelectionRepo.save(row);
+    /**
+     * Writes the buffered selections, {@code batch-size} users per transaction. A batch the
+     * database rejects is retried one user at a time, so one bad selection does not hold back the
+     * others. When the database is unreachable or busy, everything stays pending and the flush
+     * stops early; {@link UserSelectionFlusher} then waits longer before the next one.
+     *
+     * @return {@code false} if the flush stopped because the database was unavailable
+     */
+    public boolean flushPending() {
+        if (writeBuffer.isEmpty()) {
+            return true;
+        }
+        flushLock.lock();
+        try {
+            for (List<Map.Entry<String, List<Long>>> batch : writeBuffer.batches()) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writeAll(batch));
+                    batch.forEach(writeBuffer::written);
+                } catch (RuntimeException e) {
+                    if (!rejected(e)) {
+                        log.warn("Writing {} buffered selections failed, keeping them pending", batch.size(), e);
+                        return false;
+                    }
+                    log.warn("Writing {} buffered selections was rejected, retrying one by one", batch.size(), e);
+                    for (Map.Entry<String, List<Long>> entry : batch) {
+                        if (!flushOne(entry)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
         }
+    }
 
-        return getSelection(username);
+    /**
+     * Each attempt looks the sectors up again, so one deleted since the last attempt drops out of
+     * the selection instead of failing it. A selection rejected on every attempt is dropped.
+     */
+    private boolean flushOne(Map.Entry<String, List<Long>> entry) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> writeAll(List.of(entry)));
+                writeBuffer.written(entry);
+                return true;
+            } catch (RuntimeException e) {
+                if (!rejected(e)) {
+                    log.warn("Buffered selection username={} stays pending", entry.getKey(), e);
+                    return false;
+                }
+                if (attempt == FLUSH_ATTEMPTS) {
+                    log.error("Dropping buffered selection username={}", entry.getKey(), e);
+                    writeBuffer.written(entry);
+                    return true;
+                }
+                log.debug("Buffered selection username={} rejected, retrying", entry.getKey(), e);
+            }
+        }
     }
 
-    @Transactional(readOnly = true)
-    public UserSelectionView getSelection(String username) {
-        List<UserSectorSelection> rows = userSelectionRepo.findByUsername(username);
+    /**
+     * Whether the database refused the data itself, as opposed to being unreachable or busy;
+     * Spring counts a refused connection as non-transient too.
+     */
+    private static boolean rejected(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException
+                && !(e instanceof NonTransientDataAccessResourceException);
+    }
 
-        if (rows.isEmpty()) {
-            throw new EntityNotFoundException("No sector selections found for username: " + username);
+    private void writeAll(List<Map.Entry<String, List<Long>>> batch) {
+        Set<Long> requested = new HashSet<>();
+        batch.forEach(entry -> requested.addAll(entry.getValue()));
+        // a sector deleted since the save was acknowledged drops out of the selection
+        Set<Long> live = requested.isEmpty() ? Set.of() : new HashSet<>(sectorRepository.findExistingIds(requested));
+        for (Map.Entry<String, List<Long>> entry : batch) {
+            Set<Long> sectorIds = new LinkedHashSet<>(entry.getValue());
+            sectorIds.retainAll(live);
+            write(entry.getKey(), sectorIds, null);
+        }
+    }
+
+    /**
+     * Sectors the snapshot does not know may have been created on another instance, so only
+     * those are looked up.
+     */
+    private void validateAgainstCatalog(Set<Long> requested) {
+        SectorTree tree = catalog.current();
+        List<Long> unknown = requested.stream()
+                .filter(sectorId -> !tree.contains(sectorId))
+                .toList();
+        if (!unknown.isEmpty() && sectorRepository.findExistingIds(unknown).size() != unknown.size()) {
+            throw new SectorDoesNotExistException();
         }
+    }
+
+    private UserSelectionView write(String username, Set<Long> requested, Collection<String> expectedVersions) {
+        int userId = appUserRepository.idFor(username);
+        Set<Long> existing = new HashSet<>(userSelectionRepo.findSectorIdsByUserId(userId));
+        // checked again under the user's row lock, in case another save committed meanwhile
+        checkVersion(username, existing, expectedVersions);
 
-        List<Long> sectorIds = rows.stream()
-                .map(row -> row.getSector().getId())
+        List<Long> removed = existing.stream()
+                .filter(sectorId -> !requested.contains(sectorId))
+                .toList();
+        List<Long> added = requested.stream()
+                .filter(sectorId -> !existing.contains(sectorId))
                 .toList();
 
+        if (!removed.isEmpty()) {
+            userSelectionRepo.deleteByUserIdAndSectorIdIn(userId, removed);
+        }
+        if (!added.isEmpty()) {
+            userSelectionRepo.insertAll(userId, added);
+        }
+        log.debug("Saved selection username={} added={} removed={}", username, added.size(), removed.size());
+
+        List<Long> saved = List.copyOf(requested);
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            eventPublisher.publishEvent(new UserSelectionChangedEvent(userId, username, saved, added, removed));
+        }
+
+        return new UserSelectionView(username, saved);
+    }
+
+    public UserSelectionView getSelection(String username) {
+        List<Long> sectorIds = currentSelection(username);
+        if (sectorIds.isEmpty()) {
+            throw new EntityNotFoundException("No sector selections found for username: " + username);
+        }
         return new UserSelectionView(username, sectorIds);
     }
+
+    /**
+     * Version of a selection, independent of the order of its sector ids; the same on every
+     * instance, so it can be handed to clients as an ETag.
+     */
+    public static String versionOf(Collection<Long> sectorIds) {
+        long[] sorted = sectorIds.stream().mapToLong(Long::longValue).distinct().sorted().toArray();
+        ByteBuffer bytes = ByteBuffer.allocate(sorted.length * Long.BYTES);
+        bytes.asLongBuffer().put(sorted);
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes.array()), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void checkVersion(String username, Collection<Long> current, Collection<String> expectedVersions) {
+        if (expectedVersions == null) {
+            return;
+        }
+        boolean matches = expectedVersions.contains("*")
+                ? !current.isEmpty()
+                : expectedVersions.contains(versionOf(current));
+        if (!matches) {
+            throw new StaleSelectionException(username);
+        }
+    }
+
+    /**
+     * The pending selection in write-behind mode, else the cached or stored one; empty if none.
+     */
+    private List<Long> currentSelection(String username) {
+        List<Long> known = knownSelection(username);
+        if (known != null) {
+            return known;
+        }
+        return remember(username, userSelectionRepo.findSectorIdsByUsername(username));
+    }
+
+    /**
+     * The selection as this instance already knows it, pending or cached, without touching the
+     * database; {@code null} if it has to be read.
+     */
+    public List<Long> knownSelection(String username) {
+        List<Long> pending = writeBuffer.pending(username);
+        if (pending != null) {
+            return pending;
+        }
+        long[] sectorIds = selectionCache.get(username);
+        return sectorIds != null ? Arrays.stream(sectorIds).boxed().toList() : null;
+    }
+
+    /**
+     * Caches a selection read from the database and returns the cached one, which a save that
+     * committed meanwhile may have replaced.
+     */
+    public List<Long> remember(String username, List<Long> stored) {
+        if (stored.isEmpty()) {
+            return List.of();
+        }
+        long[] sectorIds = selectionCache.putIfAbsent(username, stored.stream().mapToLong(Long::longValue).toArray());
+        return Arrays.stream(sectorIds).boxed().toList();
+    }
 }
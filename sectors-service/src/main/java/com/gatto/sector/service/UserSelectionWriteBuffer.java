@@ -0,0 +1,109 @@
+package com.gatto.sector.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Acknowledged selections not yet written, latest per username, for the write-behind mode. A
+ * save replaces the pending one for the same user, so a user clicking save five times costs one
+ * write. Bounded by user count; when full, a save for a user not already pending is written
+ * through instead.
+ */
+@Component
+public class UserSelectionWriteBuffer {
+
+    private final boolean enabled;
+    private final int maxPending;
+    private final int batchSize;
+    private final Map<String, List<Long>> pending = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public UserSelectionWriteBuffer(@Value("${sectors.selections.write-behind.enabled:false}") boolean enabled,
+                                    @Value("${sectors.selections.write-behind.max-pending:10000}") int maxPending,
+                                    @Value("${sectors.selections.write-behind.batch-size:500}") int batchSize,
+                                    MeterRegistry registry) {
+        if (maxPending <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("write-behind max-pending and batch-size must be positive");
+        }
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        this.coalesced = registry.counter("sectors.selections.coalesced");
+        registry.gaugeMapSize("sectors.selections.pending", Tags.empty(), pending);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the selection unless the buffer is full and the user has nothing pending. The size
+     * is checked without a lock, so concurrent saves can overshoot the bound by a few entries.
+     */
+    public boolean offer(String username, List<Long> sectorIds) {
+        if (pending.size() >= maxPending && !pending.containsKey(username)) {
+            return false;
+        }
+        if (pending.put(username, sectorIds) != null) {
+            coalesced.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the user's pending selection if {@code check} accepts it, in one step, so no other
+     * save can slip in between; the check throwing leaves it pending as it was. Returns
+     * {@code false} when nothing is pending.
+     */
+    public boolean replace(String username, List<Long> sectorIds, Consumer<List<Long>> check) {
+        List<Long> replaced = pending.computeIfPresent(username, (key, current) -> {
+            check.accept(current);
+            coalesced.increment();
+            return sectorIds;
+        });
+        return replaced != null;
+    }
+
+    public List<Long> pending(String username) {
+        return pending.get(username);
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Everything pending right now, in batches of at most {@code batch-size} users.
+     */
+    public List<List<Map.Entry<String, List<Long>>>> batches() {
+        List<List<Map.Entry<String, List<Long>>>> batches = new ArrayList<>();
+        List<Map.Entry<String, List<Long>>> batch = new ArrayList<>(batchSize);
+        for (Map.Entry<String, List<Long>> entry : pending.entrySet()) {
+            batch.add(Map.entry(entry.getKey(), entry.getValue()));
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Forgets a written selection, unless the user saved again since it was taken.
+     */
+    public void written(Map.Entry<String, List<Long>> entry) {
+        pending.remove(entry.getKey(), entry.getValue());
+    }
+}
@@ -0,0 +1,255 @@
+package com.gatto.sector.tree;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable trigram index over sector names, for substring search without scanning every name.
+ * Names are folded to lower case without accents; every trigram of a folded name maps to the
+ * sorted ids of the sectors containing it. A query is the intersection of its trigrams' lists,
+ * verified against the names. One or two characters match nearly every name anyway, so such
+ * queries scan the folded names instead of keeping lists that every edit would rewrite.
+ * <p>
+ * Postings are keyed by sector id rather than snapshot position, so an edit only rewrites the
+ * lists of the grams it adds or removes and the next snapshot shares all the others.
+ */
+final class SectorNameIndex {
+
+    private static final int GRAM = 3;
+    private static final long[] NONE = new long[0];
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private final Map<String, long[]> postings;
+    // the snapshot's ids and their folded names, position by position
+    private final long[] ids;
+    private final String[] folded;
+
+    private SectorNameIndex(Map<String, long[]> postings, long[] ids, String[] folded) {
+        this.postings = postings;
+        this.ids = ids;
+        this.folded = folded;
+    }
+
+    /**
+     * @param ids ascending, as a snapshot stores them
+     */
+    static SectorNameIndex of(long[] ids, String[] names) {
+        String[] folded = new String[ids.length];
+        Map<String, Postings> grams = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            folded[i] = fold(names[i]);
+            // ids arrive in ascending order, so every list is built already sorted
+            for (String gram : grams(folded[i])) {
+                grams.computeIfAbsent(gram, key -> new Postings()).add(ids[i]);
+            }
+        }
+        Map<String, long[]> postings = new HashMap<>(grams.size() * 2);
+        grams.forEach((gram, members) -> postings.put(gram, members.toArray()));
+        return new SectorNameIndex(postings, ids, folded);
+    }
+
+    /**
+     * Lower case, accents stripped, whitespace collapsed: "Électronique  Grand" is "electronique grand".
+     */
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = MARKS.matcher(decomposed).replaceAll("");
+        return SPACES.matcher(stripped.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the index for the next snapshot, whose {@code ids} and {@code names} differ from this
+     * one's only in {@code changed}; a {@code null} name there means the sector was removed.
+     * Unchanged names are not folded again.
+     */
+    SectorNameIndex with(long[] ids, String[] names, Map<Long, String> changed) {
+        Map<String, Set<Long>> added = new HashMap<>();
+        Map<String, Set<Long>> removed = new HashMap<>();
+        changed.forEach((id, name) -> {
+            int before = Arrays.binarySearch(this.ids, id);
+            Set<String> beforeGrams = before >= 0 ? grams(this.folded[before]) : Set.of();
+            Set<String> afterGrams = name != null ? grams(fold(name)) : Set.of();
+            for (String gram : beforeGrams) {
+                if (!afterGrams.contains(gram)) {
+                    removed.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+                }
+            }
+            for (String gram : afterGrams) {
+                if (!beforeGrams.contains(gram)) {
+                    added.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+                }
+            }
+        });
+
+        // both id arrays are sorted, so one walk lines the old folded names up with the new ids
+        long[] renamed = sorted(changed.keySet());
+        String[] folded = new String[ids.length];
+        for (int i = 0, old = 0, change = 0; i < ids.length; i++) {
+            while (old < this.ids.length && this.ids[old] < ids[i]) {
+                old++;
+            }
+            while (change < renamed.length && renamed[change] < ids[i]) {
+                change++;
+            }
+            boolean kept = old < this.ids.length && this.ids[old] == ids[i]
+                    && (change == renamed.length || renamed[change] != ids[i]);
+            folded[i] = kept ? this.folded[old] : fold(names[i]);
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return new SectorNameIndex(postings, ids, folded);
+        }
+
+        Map<String, long[]> postings = new HashMap<>(this.postings);
+        Set<String> touched = new HashSet<>(added.keySet());
+        touched.addAll(removed.keySet());
+        for (String gram : touched) {
+            long[] members = merge(postings.getOrDefault(gram, NONE),
+                    sorted(removed.getOrDefault(gram, Set.of())), sorted(added.getOrDefault(gram, Set.of())));
+            if (members.length == 0) {
+                postings.remove(gram);
+            } else {
+                postings.put(gram, members);
+            }
+        }
+        return new SectorNameIndex(postings, ids, folded);
+    }
+
+    /**
+     * Ids, ascending, of the sectors whose folded name contains the already folded {@code query}.
+     */
+    long[] matching(String query) {
+        if (query.isEmpty()) {
+            return NONE;
+        }
+        if (query.length() < GRAM) {
+            return scan(query);
+        }
+
+        long[][] lists = new long[query.length() - GRAM + 1][];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.getOrDefault(query.substring(i, i + GRAM), NONE);
+        }
+        // shortest first, so the intersection only ever shrinks from the smallest list
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        long[] candidates = lists[0];
+        for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists[i]);
+        }
+
+        // trigrams present in any order do not make a substring
+        long[] hits = new long[candidates.length];
+        int count = 0;
+        for (long id : candidates) {
+            if (foldedName(id).contains(query)) {
+                hits[count++] = id;
+            }
+        }
+        return Arrays.copyOf(hits, count);
+    }
+
+    String foldedName(long id) {
+        return folded[Arrays.binarySearch(ids, id)];
+    }
+
+    private long[] scan(String query) {
+        long[] hits = new long[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (folded[i].contains(query)) {
+                hits[count++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(hits, count);
+    }
+
+    private static Set<String> grams(String name) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            grams.add(name.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static long[] sorted(Set<Long> ids) {
+        long[] sorted = new long[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            sorted[i++] = id;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Sorted {@code ids} without {@code removed} and with {@code added}, in one pass.
+     */
+    private static long[] merge(long[] ids, long[] removed, long[] added) {
+        long[] merged = new long[ids.length + added.length];
+        int count = 0;
+        int r = 0;
+        int a = 0;
+        for (long id : ids) {
+            while (a < added.length && added[a] < id) {
+                merged[count++] = added[a++];
+            }
+            while (r < removed.length && removed[r] < id) {
+                r++;
+            }
+            if (r < removed.length && removed[r] == id) {
+                continue;
+            }
+            if (a < added.length && added[a] == id) {
+                a++;
+            }
+            merged[count++] = id;
+        }
+        while (a < added.length) {
+            merged[count++] = added[a++];
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] both = new long[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                both[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+
+    private static final class Postings {
+
+        private long[] ids = new long[4];
+        private int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.gatto.sector.tree;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Immutable snapshot of the whole sector catalog.
+ * Nodes are stored in ascending id order; parents are kept as indexes into the same arrays.
+ * Every node also carries its pre-order position and the last pre-order position of its
+ * subtree, so subtree membership is a range check and descendants are a contiguous slice.
+ * The name index for {@link #search} is built on first use and then carried from snapshot to
+ * snapshot, updated with just the changed names.
+ */
+@JsonSerialize(using = SectorTreeSerializer.class)
+public final class SectorTree {
+
+    private static final int NO_PARENT = -1;
+
+    private final long version;
+    private final long[] ids;
+    private final int[] parents;
+    private final String[] names;
+    private final int[] preorder;
+    private final int[] enter;
+    private final int[] exit;
+    private volatile SectorNameIndex nameIndex;
+
+    private SectorTree(long version, long[] ids, int[] parents, String[] names) {
+        this.version = version;
+        this.ids = ids;
+        this.parents = parents;
+        this.names = names;
+
+        int size = ids.length;
+        this.preorder = new int[size];
+        this.enter = new int[size];
+        this.exit = new int[size];
+        number();
+    }
+
+    private SectorTree(long version, SectorTree source) {
+        this.version = version;
+        this.ids = source.ids;
+        this.parents = source.parents;
+        this.names = source.names;
+        this.preorder = source.preorder;
+        this.enter = source.enter;
+        this.exit = source.exit;
+        this.nameIndex = source.nameIndex;
+    }
+
+    public static SectorTree of(long version, Collection<SectorView> sectors) {
+        SectorView[] sorted = sectors.toArray(SectorView[]::new);
+        Arrays.sort(sorted, Comparator.comparing(SectorView::id));
+
+        int size = sorted.length;
+        long[] ids = new long[size];
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && sorted[i].id().equals(sorted[i - 1].id())) {
+                throw new IllegalArgumentException("Duplicate sector id " + sorted[i].id());
+            }
+            ids[i] = sorted[i].id();
+            names[i] = sorted[i].name();
+        }
+
+        int[] parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            Long parentId = sorted[i].parentId();
+            parents[i] = parentId != null ? Math.max(Arrays.binarySearch(ids, parentId), NO_PARENT) : NO_PARENT;
+        }
+
+        return new SectorTree(version, ids, parents, names);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean contains(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    public Optional<SectorView> find(long id) {
+        int index = indexOf(id);
+        return index >= 0 ? Optional.of(viewAt(index)) : Optional.empty();
+    }
+
+    /**
+     * True when {@code id} lies strictly inside the subtree of {@code ancestorId}.
+     */
+    public boolean isDescendant(long id, long ancestorId) {
+        int node = indexOf(id);
+        int ancestor = indexOf(ancestorId);
+        return node >= 0 && ancestor >= 0
+                && enter[ancestor] < enter[node] && enter[node] <= exit[ancestor];
+    }
+
+    /**
+     * Parent of the sector, or {@code null} for a root or an unknown id.
+     */
+    public Long parentIdOf(long id) {
+        int index = indexOf(id);
+        return index >= 0 && parents[index] != NO_PARENT ? ids[parents[index]] : null;
+    }
+
+    /**
+     * True when {@code ancestorId} is {@code id} itself or one of its ancestors, with the parents
+     * in {@code moved} (id to new parent id, {@code null} for a root) taking precedence over this
+     * snapshot. Walks up from {@code id}, so it costs O(depth) and sees uncommitted moves, which
+     * the pre-order intervals cannot.
+     */
+    public boolean isAtOrAbove(long ancestorId, long id, Map<Long, Long> moved) {
+        Long current = id;
+        // a walk longer than the catalog can only be going round an existing cycle
+        for (int steps = 0; current != null; steps++) {
+            if (current == ancestorId || steps > ids.length + moved.size()) {
+                return true;
+            }
+            current = moved.containsKey(current) ? moved.get(current) : parentIdOf(current);
+        }
+        return false;
+    }
+
+    /**
+     * Descendants of the sector in pre-order, without the sector itself.
+     */
+    public List<SectorView> descendants(long id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return List.of();
+        }
+        List<SectorView> views = new ArrayList<>(exit[index] - enter[index]);
+        for (int position = enter[index] + 1; position <= exit[index]; position++) {
+            views.add(viewAt(preorder[position]));
+        }
+        return views;
+    }
+
+    /**
+     * Ancestors of the sector from the root down to its direct parent.
+     */
+    public List<SectorView> ancestors(long id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return List.of();
+        }
+        List<SectorView> views = new ArrayList<>();
+        for (int parent = parents[index]; parent != NO_PARENT && views.size() < ids.length; parent = parents[parent]) {
+            views.add(viewAt(parent));
+        }
+        Collections.reverse(views);
+        return views;
+    }
+
+    /**
+     * Sectors whose name contains {@code query}, ignoring case and accents: names starting with it
+     * first, then those with a word starting with it, each group shortest name first.
+     */
+    public List<SectorView> search(String query, int limit) {
+        String folded = SectorNameIndex.fold(query);
+        SectorNameIndex index = nameIndex();
+        List<Hit> hits = new ArrayList<>();
+        for (long id : index.matching(folded)) {
+            String name = index.foldedName(id);
+            hits.add(new Hit(id, rank(name, folded), name.length()));
+        }
+        hits.sort(Comparator.comparingInt(Hit::rank).thenComparingInt(Hit::length).thenComparingLong(Hit::id));
+
+        List<SectorView> views = new ArrayList<>(Math.min(limit, hits.size()));
+        for (Hit hit : hits.subList(0, Math.min(limit, hits.size()))) {
+            views.add(viewAt(indexOf(hit.id())));
+        }
+        return views;
+    }
+
+    /**
+     * Sums a per-sector value over every subtree. The result is indexed in id order,
+     * the same order the {@link #cursor()} visits.
+     */
+    public long[] subtreeSums(LongUnaryOperator valueOfId) {
+        long[] sums = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            sums[i] = valueOfId.applyAsLong(ids[i]);
+        }
+        // children come after their parent in pre-order, so a reverse walk folds them up
+        for (int position = preorder.length - 1; position >= 0; position--) {
+            int node = preorder[position];
+            if (parents[node] != NO_PARENT && enter[parents[node]] < position) {
+                sums[parents[node]] += sums[node];
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Forward-only cursor over the snapshot in id order that reads the arrays without creating views.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the same catalog under another version; the arrays are shared, not copied.
+     */
+    public SectorTree atVersion(long version) {
+        return version == this.version ? this : new SectorTree(version, this);
+    }
+
+    public List<SectorView> toViews() {
+        List<SectorView> views = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            views.add(viewAt(i));
+        }
+        return views;
+    }
+
+    /**
+     * Returns a new snapshot with the given sector inserted or replaced.
+     */
+    public SectorTree with(SectorView sector) {
+        List<SectorView> views = toViews();
+        int index = indexOf(sector.id());
+        if (index >= 0) {
+            views.set(index, sector);
+        } else {
+            views.add(sector);
+        }
+        return withIndex(of(version + 1, views), Collections.singletonMap(sector.id(), sector.name()));
+    }
+
+    /**
+     * Returns a new snapshot with the given sectors added.
+     */
+    public SectorTree withAll(Collection<SectorView> sectors) {
+        List<SectorView> views = toViews();
+        views.addAll(sectors);
+        Map<Long, String> names = new HashMap<>();
+        sectors.forEach(sector -> names.put(sector.id(), sector.name()));
+        return withIndex(of(version + 1, views), names);
+    }
+
+    /**
+     * Returns a new snapshot with the changes applied in order, rebuilt once.
+     */
+    public SectorTree withChanges(Collection<SectorChangeView> changes) {
+        Map<Long, SectorView> views = new LinkedHashMap<>();
+        for (SectorView view : toViews()) {
+            views.put(view.id(), view);
+        }
+        Map<Long, String> names = new HashMap<>();
+        for (SectorChangeView change : changes) {
+            if (change.deleted()) {
+                views.remove(change.id());
+            } else {
+                views.put(change.id(), new SectorView(change.id(), change.name(), change.parentId()));
+            }
+            names.put(change.id(), change.deleted() ? null : change.name());
+        }
+        return withIndex(of(version + 1, views.values()), names);
+    }
+
+    /**
+     * Returns a new snapshot without the given sector.
+     */
+    public SectorTree without(long id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return this;
+        }
+        List<SectorView> views = toViews();
+        views.remove(index);
+        return withIndex(of(version + 1, views), Collections.singletonMap(id, null));
+    }
+
+    private SectorTree withIndex(SectorTree next, Map<Long, String> changedNames) {
+        SectorNameIndex index = nameIndex;
+        if (index != null) {
+            next.nameIndex = index.with(next.ids, next.names, changedNames);
+        }
+        return next;
+    }
+
+    private SectorNameIndex nameIndex() {
+        SectorNameIndex index = nameIndex;
+        if (index == null) {
+            // racing first searches build equal indexes; either may win
+            index = SectorNameIndex.of(ids, names);
+            nameIndex = index;
+        }
+        return index;
+    }
+
+    // 0: the name starts with the query, 1: a later word does, 2: it is inside a word
+    private static int rank(String name, String query) {
+        if (name.startsWith(query)) {
+            return 0;
+        }
+        for (int at = name.indexOf(query); at > 0; at = name.indexOf(query, at + 1)) {
+            if (!Character.isLetterOrDigit(name.charAt(at - 1))) {
+                return 1;
+            }
+        }
+        return 2;
+    }
+
+    private record Hit(long id, int rank, int length) {}
+
+    private void number() {
+        int size = ids.length;
+
+        // children of node i are children[childStart[i] .. childStart[i + 1]), in id order
+        int[] childStart = new int[size + 1];
+        for (int parent : parents) {
+            if (parent != NO_PARENT) {
+                childStart[parent + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        int[] children = new int[childStart[size]];
+        int[] cursor = Arrays.copyOf(childStart, size);
+        for (int i = 0; i < size; i++) {
+            if (parents[i] != NO_PARENT) {
+                children[cursor[parents[i]]++] = i;
+            }
+        }
+
+        Arrays.fill(enter, -1);
+        System.arraycopy(childStart, 0, cursor, 0, size);
+        int[] stack = new int[size];
+        int position = 0;
+
+        // roots first; the second pass only picks up nodes stuck in a parent cycle
+        for (int pass = 0; pass < 2; pass++) {
+            for (int root = 0; root < size; root++) {
+                if (enter[root] != -1 || (pass == 0 && parents[root] != NO_PARENT)) {
+                    continue;
+                }
+                int depth = 0;
+                stack[depth++] = root;
+                enter[root] = position;
+                preorder[position++] = root;
+
+                while (depth > 0) {
+                    int node = stack[depth - 1];
+                    if (cursor[node] < childStart[node + 1]) {
+                        int child = children[cursor[node]++];
+                        if (enter[child] == -1) {
+                            enter[child] = position;
+                            preorder[position++] = child;
+                            stack[depth++] = child;
+                        }
+                    } else {
+                        exit[node] = position - 1;
+                        depth--;
+                    }
+                }
+            }
+        }
+    }
+
+    private int indexOf(long id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    private SectorView viewAt(int index) {
+        int parent = parents[index];
+        return new SectorView(ids[index], names[index], parent != NO_PARENT ? ids[parent] : null);
+    }
+
+    public final class Cursor {
+
+        private int index = -1;
+
+        private Cursor() {
+        }
+
+        public boolean next() {
+            return ++index < ids.length;
+        }
+
+        public long id() {
+            return ids[index];
+        }
+
+        public String name() {
+            return names[index];
+        }
+
+        public boolean hasParent() {
+            return parents[index] != NO_PARENT;
+        }
+
+        public long parentId() {
+            return ids[parents[index]];
+        }
+    }
+}
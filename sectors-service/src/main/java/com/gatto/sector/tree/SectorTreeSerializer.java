@@ -0,0 +1,44 @@
+package com.gatto.sector.tree;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes a snapshot as the same array of {@code SectorView} objects, straight from the
+ * snapshot arrays into the generator, so no per-request copy of the catalog is built.
+ */
+public class SectorTreeSerializer extends StdSerializer<SectorTree> {
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString PARENT_ID = new SerializedString("parentId");
+
+    public SectorTreeSerializer() {
+        super(SectorTree.class);
+    }
+
+    @Override
+    public void serialize(SectorTree tree, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartArray(tree, tree.size());
+        SectorTree.Cursor cursor = tree.cursor();
+        while (cursor.next()) {
+            gen.writeStartObject();
+            gen.writeFieldName(ID);
+            gen.writeNumber(cursor.id());
+            gen.writeFieldName(NAME);
+            gen.writeString(cursor.name());
+            gen.writeFieldName(PARENT_ID);
+            if (cursor.hasParent()) {
+                gen.writeNumber(cursor.parentId());
+            } else {
+                gen.writeNull();
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+}
@@ -0,0 +1,13 @@
+package com.gatto.sector.view;
+
+import java.util.List;
+
+/**
+ * Users who selected the sector or anything below it: their number, and one page of their
+ * usernames in user id order.
+ */
+public record SectorAudienceView(
+        Long sectorId,
+        long users,
+        List<String> usernames
+) {}
@@ -0,0 +1,11 @@
+package com.gatto.sector.view;
+
+import java.util.Map;
+
+/**
+ * Result of a batch: the catalog version it committed as and the ids given to each {@code ref}.
+ */
+public record SectorBatchView(
+        long version,
+        Map<String, Long> created
+) {}
@@ -0,0 +1,12 @@
+package com.gatto.sector.view;
+
+/**
+ * Latest state of one sector in a delta; {@code deleted} rows are tombstones with no name or parent.
+ */
+public record SectorChangeView(
+        long version,
+        Long id,
+        String name,
+        Long parentId,
+        boolean deleted
+) {}
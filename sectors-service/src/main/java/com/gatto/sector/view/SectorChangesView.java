@@ -0,0 +1,13 @@
+package com.gatto.sector.view;
+
+import java.util.List;
+
+/**
+ * Changes after the client's version. When {@code fullResync} is set the log no longer covers
+ * that version, {@code changes} is empty and the client has to reload {@code GET /api/sectors}.
+ */
+public record SectorChangesView(
+        long version,
+        boolean fullResync,
+        List<SectorChangeView> changes
+) {}
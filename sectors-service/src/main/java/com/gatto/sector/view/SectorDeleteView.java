@@ -0,0 +1,9 @@
+package com.gatto.sector.view;
+
+import java.util.List;
+
+public record SectorDeleteView(
+        long version,
+        List<Long> deletedIds,
+        long reassignedSelections
+) {}
@@ -0,0 +1,5 @@
+package com.gatto.sector.view;
+
+public record SectorImportView(
+        long imported
+) {}
@@ -0,0 +1,8 @@
+package com.gatto.sector.view;
+
+/**
+ * Target of a move; {@code null} makes the sector a root.
+ */
+public record SectorMoveView(
+        Long parentId
+) {}
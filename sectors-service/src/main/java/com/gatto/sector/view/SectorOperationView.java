@@ -0,0 +1,19 @@
+package com.gatto.sector.view;
+
+/**
+ * One step of a batch. A {@code CREATE} may carry a client-side {@code ref}; later steps of the
+ * same batch point at that sector through {@code parentRef} instead of {@code parentId}.
+ */
+public record SectorOperationView(
+        Type type,
+        String ref,
+        Long id,
+        String name,
+        Long parentId,
+        String parentRef
+) {
+
+    public enum Type {
+        CREATE, UPDATE, DELETE
+    }
+}
@@ -0,0 +1,13 @@
+package com.gatto.sector.view;
+
+import java.util.List;
+
+/**
+ * A search hit with its ancestors from the root down to its direct parent.
+ */
+public record SectorSearchView(
+        Long id,
+        String name,
+        Long parentId,
+        List<SectorView> path
+) {}
@@ -0,0 +1,7 @@
+package com.gatto.sector.view;
+
+public record SectorStatsView(
+        Long sectorId,
+        long selections,
+        long subtreeSelections
+) {}
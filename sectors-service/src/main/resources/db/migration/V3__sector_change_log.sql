@@ -0,0 +1,23 @@
+-- Change log behind GET /api/sectors/changes: one row per sector mutation, numbered by a
+-- single counter that also serves as the catalog version.
+
+CREATE TABLE sector_change_state (
+    id           SMALLINT PRIMARY KEY CHECK (id = 1),
+    -- last version handed out; bumping it row-locks, so versions commit in order
+    version      BIGINT NOT NULL,
+    -- clients older than this have missed compacted or bulk-imported changes
+    compacted_to BIGINT NOT NULL
+);
+
+INSERT INTO sector_change_state (id, version, compacted_to) VALUES (1, 1, 1);
+
+CREATE TABLE sector_change (
+    version    BIGINT PRIMARY KEY,
+    sector_id  BIGINT NOT NULL,
+    name       VARCHAR(255),
+    parent_id  BIGINT,
+    deleted    BOOLEAN NOT NULL DEFAULT FALSE,
+    changed_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idx_sector_change_changed_at ON sector_change (changed_at);
@@ -0,0 +1,9 @@
+-- Sector ids are allocated by Hibernate in blocks of 50 (pooled optimizer), so new sectors
+-- need no round trip each and their inserts can be batched. The column default is dropped:
+-- a plain nextval() would hand out an id inside a block another session is still using.
+ALTER TABLE sector ALTER COLUMN id DROP DEFAULT;
+
+ALTER SEQUENCE sector_id_seq INCREMENT BY 50;
+
+-- the next block starts right after the largest id
+SELECT setval('sector_id_seq', (SELECT COALESCE(MAX(id), 1) FROM sector));
@@ -0,0 +1,31 @@
+-- Usernames are stored once, in a dictionary; a selection row shrinks to two integer keys instead
+-- of a BIGSERIAL id, the VARCHAR username and a unique index repeating that username.
+CREATE TABLE app_user (
+    id       INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username VARCHAR(255) NOT NULL,
+    CONSTRAINT uk_app_user_username UNIQUE (username)
+);
+
+INSERT INTO app_user (username)
+SELECT DISTINCT username FROM user_sector_selection ORDER BY username;
+
+-- rebuilt rather than altered: dropped columns keep their space in every row until a rewrite
+CREATE TABLE user_sector_selection_new (
+    user_id   INT    NOT NULL,
+    sector_id BIGINT NOT NULL,
+    CONSTRAINT pk_user_sector_selection PRIMARY KEY (user_id, sector_id),
+    CONSTRAINT fk_user_sector_selection_user FOREIGN KEY (user_id) REFERENCES app_user (id),
+    CONSTRAINT fk_user_sector_selection_sector FOREIGN KEY (sector_id) REFERENCES sector (id)
+);
+
+INSERT INTO user_sector_selection_new (user_id, sector_id)
+SELECT u.id, s.sector_id
+FROM user_sector_selection s
+JOIN app_user u ON u.username = s.username
+ORDER BY u.id, s.sector_id;
+
+DROP TABLE user_sector_selection;
+ALTER TABLE user_sector_selection_new RENAME TO user_sector_selection;
+
+-- the primary key serves lookups by user; sector deletes and their foreign key checks need this one
+CREATE INDEX idx_user_sector_selection_sector ON user_sector_selection (sector_id);
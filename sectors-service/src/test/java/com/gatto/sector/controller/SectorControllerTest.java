@@ -1,30 +1,61 @@
 package com.gatto.sector.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.gatto.sector.config.BinaryFormatsConfig;
+import com.gatto.sector.error.SectorCycleException;
+import com.gatto.sector.service.SectorAudienceService;
+import com.gatto.sector.service.SectorEventBroadcaster;
+import com.gatto.sector.service.SectorImportService;
 import com.gatto.sector.service.SectorService;
+import com.gatto.sector.service.SectorStatsService;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorAudienceView;
+import com.gatto.sector.view.SectorBatchView;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorChangesView;
+import com.gatto.sector.view.SectorDeleteView;
+import com.gatto.sector.view.SectorImportView;
+import com.gatto.sector.view.SectorOperationView;
+import com.gatto.sector.view.SectorSearchView;
+import com.gatto.sector.view.SectorStatsView;
 import com.gatto.sector.view.SectorView;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.function.Supplier;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(SectorController.class)
+@Import(BinaryFormatsConfig.class)
 class SectorControllerTest {
 
     @Autowired
@@ -33,17 +64,29 @@ class SectorControllerTest {
     @MockBean
     SectorService sectorService;
 
+    @MockBean
+    SectorImportService sectorImportService;
+
+    @MockBean
+    SectorStatsService sectorStatsService;
+
+    @MockBean
+    SectorEventBroadcaster sectorEventBroadcaster;
+
+    @MockBean
+    SectorAudienceService sectorAudienceService;
+
     @Autowired
     ObjectMapper objectMapper;
 
     @Test
     @DisplayName("GET /api/sectors -> 200 OK + sectors list")
     void getAll_returnsList() throws Exception {
-        List<SectorView> sectors = List.of(
+        SectorTree sectors = SectorTree.of(1L, List.of(
                 new SectorView(1L, "Sector 1", null),
                 new SectorView(2L, "Sector 2", 1L)
-        );
-        given(sectorService.getAllSectors()).willReturn(sectors);
+        ));
+        given(sectorService.getCatalog()).willReturn(sectors);
 
         mockMvc.perform(get("/api/sectors"))
                 .andExpect(status().isOk())
@@ -53,6 +96,124 @@ class SectorControllerTest {
                 .andExpect(jsonPath("$[1].parentId").value(1L));
     }
 
+    @Test
+    @DisplayName("GET /api/sectors with Accept: application/x-jackson-smile -> Smile body")
+    void getAll_smile() throws Exception {
+        given(sectorService.getCatalog()).willReturn(SectorTree.of(1L, List.of(
+                new SectorView(1L, "Sector 1", null),
+                new SectorView(2L, "Sector 2", 1L)
+        )));
+
+        byte[] body = mockMvc.perform(get("/api/sectors").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andExpect(header().stringValues("Vary", hasItem("Accept")))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode sectors = new ObjectMapper(new SmileFactory()).readTree(body);
+        assertThat(sectors).hasSize(2);
+        assertThat(sectors.get(1).get("name").asText()).isEqualTo("Sector 2");
+        assertThat(sectors.get(1).get("parentId").asLong()).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/changes?since=N -> 200 with the delta and the new version")
+    void changes_returnsDelta() throws Exception {
+        given(sectorService.getChanges(10L)).willReturn(new SectorChangesView(12L, false, List.of(
+                new SectorChangeView(11L, 7L, "Root", null, false),
+                new SectorChangeView(12L, 5L, null, null, true)
+        )));
+
+        mockMvc.perform(get("/api/sectors/changes").param("since", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-store"))
+                .andExpect(jsonPath("$.version").value(12))
+                .andExpect(jsonPath("$.fullResync").value(false))
+                .andExpect(jsonPath("$.changes.length()").value(2))
+                .andExpect(jsonPath("$.changes[1].id").value(5))
+                .andExpect(jsonPath("$.changes[1].deleted").value(true));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/events -> event stream, catching up from Last-Event-ID")
+    void events_catchesUpFromLastEventId() throws Exception {
+        SectorChangesView catchUp = new SectorChangesView(12L, false, List.of(
+                new SectorChangeView(12L, 7L, "Root", null, false)
+        ));
+        given(sectorService.getChanges(10L)).willReturn(catchUp);
+        given(sectorEventBroadcaster.subscribe(any())).willReturn(new SseEmitter());
+
+        mockMvc.perform(get("/api/sectors/events")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .header("Last-Event-ID", "10"))
+                .andExpect(request().asyncStarted());
+
+        // read by the broadcaster once the subscriber is registered
+        ArgumentCaptor<Supplier<SectorChangesView>> readCatchUp = ArgumentCaptor.captor();
+        verify(sectorEventBroadcaster).subscribe(readCatchUp.capture());
+        verify(sectorService, never()).getChanges(10L);
+        assertThat(readCatchUp.getValue().get()).isEqualTo(catchUp);
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors -> ETag of the catalog version")
+    void getAll_returnsEtag() throws Exception {
+        given(sectorService.getCatalog()).willReturn(SectorTree.of(7L, List.of(new SectorView(1L, "Sector 1", null))));
+
+        mockMvc.perform(get("/api/sectors"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7\""))
+                .andExpect(header().string("Cache-Control", "no-cache"));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors -> 304 without serialising the catalog, if If-None-Match is current")
+    void getAll_notModified() throws Exception {
+        given(sectorService.getCatalog()).willReturn(SectorTree.of(7L, List.of(new SectorView(1L, "Sector 1", null))));
+
+        mockMvc.perform(get("/api/sectors").header("If-None-Match", "\"7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"7\""))
+                .andExpect(header().stringValues("Vary", hasItem("Accept")))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors -> each format has its own ETag, so a JSON tag does not validate Smile")
+    void getAll_etagPerFormat() throws Exception {
+        given(sectorService.getCatalog()).willReturn(SectorTree.of(7L, List.of(new SectorView(1L, "Sector 1", null))));
+
+        mockMvc.perform(get("/api/sectors").accept("application/x-jackson-smile").header("If-None-Match", "\"7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7-smile\""));
+
+        mockMvc.perform(get("/api/sectors").accept("application/cbor").header("If-None-Match", "\"7-cbor\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"7-cbor\""));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors -> 200, if If-None-Match is stale")
+    void getAll_modified() throws Exception {
+        given(sectorService.getCatalog()).willReturn(SectorTree.of(8L, List.of(new SectorView(1L, "Sector 1", null))));
+
+        mockMvc.perform(get("/api/sectors").header("If-None-Match", "\"7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"8\""))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/{id} -> 304, if If-None-Match is current")
+    void getById_notModified() throws Exception {
+        given(sectorService.catalogVersion()).willReturn(7L);
+
+        mockMvc.perform(get("/api/sectors/{id}", 10L).header("If-None-Match", "\"7\""))
+                .andExpect(status().isNotModified());
+
+        verify(sectorService, never()).findById(any());
+    }
+
     @Test
     @DisplayName("GET /api/sectors/{id} -> 200 OK, if sector found")
     void getById_found() throws Exception {
@@ -104,6 +265,17 @@ class SectorControllerTest {
                 .andExpect(jsonPath("$.name").value("Updated"));
     }
 
+    @Test
+    @DisplayName("PUT /api/sectors/{id} -> 409, if the new parent is inside the sector's subtree")
+    void update_conflictOnCycle() throws Exception {
+        given(sectorService.update(eq(1L), any())).willThrow(new SectorCycleException(1L, 43L));
+
+        mockMvc.perform(put("/api/sectors/{id}", 1L)
+                        .contentType("application/json")
+                        .content("{\"id\":1,\"name\":\"Manufacturing\",\"parentId\":43}"))
+                .andExpect(status().isConflict());
+    }
+
     @Test
     @DisplayName("PUT /api/sectors/{id} -> 404, if NoSuchElementException")
     void update_notFound() throws Exception {
@@ -164,4 +336,196 @@ class SectorControllerTest {
         mockMvc.perform(delete("/api/sectors/{id}", id))
                 .andExpect(status().isConflict());
     }
+
+    @Test
+    @DisplayName("DELETE /api/sectors/{id}/subtree -> 200 OK + deleted ids and reassigned selections")
+    void deleteSubtree_ok() throws Exception {
+        given(sectorService.deleteSubtree(6L, true)).willReturn(new SectorDeleteView(30L, List.of(6L, 43L), 3L));
+
+        mockMvc.perform(delete("/api/sectors/{id}/subtree", 6L).param("reassignSelections", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(30))
+                .andExpect(jsonPath("$.deletedIds[1]").value(43))
+                .andExpect(jsonPath("$.reassignedSelections").value(3));
+    }
+
+    @Test
+    @DisplayName("POST /api/sectors/{id}/move -> 409, if the new parent is inside the branch")
+    void move_conflictOnCycle() throws Exception {
+        given(sectorService.move(1L, 43L)).willThrow(new SectorCycleException(1L, 43L));
+
+        mockMvc.perform(post("/api/sectors/{id}/move", 1L)
+                        .contentType("application/json")
+                        .content("{\"parentId\":43}"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/{id}/descendants -> 200 OK + subtree")
+    void descendants_found() throws Exception {
+        given(sectorService.findDescendants(1L)).willReturn(Optional.of(List.of(
+                new SectorView(6L, "Food and Beverage", 1L),
+                new SectorView(43L, "Beverages", 6L)
+        )));
+
+        mockMvc.perform(get("/api/sectors/{id}/descendants", 1L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].id").value(43L));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/{id}/descendants -> 404, if sector not found")
+    void descendants_notFound() throws Exception {
+        given(sectorService.findDescendants(42L)).willReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/sectors/{id}/descendants", 42L))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/{id}/ancestors -> 200 OK + path from the root")
+    void ancestors_found() throws Exception {
+        given(sectorService.findAncestors(43L)).willReturn(Optional.of(List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(6L, "Food and Beverage", 1L)
+        )));
+
+        mockMvc.perform(get("/api/sectors/{id}/ancestors", 43L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1L))
+                .andExpect(jsonPath("$[1].id").value(6L));
+    }
+
+    @Test
+    @DisplayName("POST /api/sectors/batch -> 200 OK + version and ids of created refs")
+    void batch_ok() throws Exception {
+        given(sectorService.applyBatch(any())).willReturn(new SectorBatchView(20L, Map.of("snacks", 100L)));
+
+        mockMvc.perform(post("/api/sectors/batch")
+                        .contentType("application/json")
+                        .content("""
+                                [{"type":"CREATE","ref":"snacks","name":"Snacks","parentId":6},
+                                 {"type":"DELETE","id":43}]"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(20))
+                .andExpect(jsonPath("$.created.snacks").value(100));
+
+        verify(sectorService).applyBatch(List.of(
+                new SectorOperationView(SectorOperationView.Type.CREATE, "snacks", null, "Snacks", 6L, null),
+                new SectorOperationView(SectorOperationView.Type.DELETE, null, 43L, null, null, null)
+        ));
+    }
+
+    @Test
+    @DisplayName("POST /api/sectors/batch -> 400, if an operation is invalid")
+    void batch_badRequest() throws Exception {
+        given(sectorService.applyBatch(any())).willThrow(new IllegalArgumentException("Unknown ref snacks"));
+
+        mockMvc.perform(post("/api/sectors/batch")
+                        .contentType("application/json")
+                        .content("[{\"type\":\"CREATE\",\"name\":\"Chips\",\"parentRef\":\"snacks\"}]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("POST /api/sectors/import -> 200 OK + number of imported sectors")
+    void import_ok() throws Exception {
+        given(sectorImportService.importSectors(any(), any())).willReturn(new SectorImportView(2L));
+
+        mockMvc.perform(post("/api/sectors/import")
+                        .contentType("application/x-ndjson")
+                        .content("{\"id\":2,\"name\":\"Service\"}\n{\"id\":25,\"name\":\"Business services\",\"parentId\":2}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2));
+    }
+
+    @Test
+    @DisplayName("POST /api/sectors/import -> 400, if the payload is invalid")
+    void import_badRequest() throws Exception {
+        given(sectorImportService.importSectors(any(), any()))
+                .willThrow(new IllegalArgumentException("Parent sector 99 does not exist"));
+
+        mockMvc.perform(post("/api/sectors/import")
+                        .contentType("text/csv")
+                        .content("5,Orphan,99\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/stats -> 200 OK + per-sector and subtree counts")
+    void stats_ok() throws Exception {
+        given(sectorStatsService.getStats()).willReturn(List.of(
+                new SectorStatsView(1L, 2L, 5L),
+                new SectorStatsView(6L, 3L, 3L)
+        ));
+
+        mockMvc.perform(get("/api/sectors/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].sectorId").value(1L))
+                .andExpect(jsonPath("$[0].subtreeSelections").value(5L))
+                .andExpect(jsonPath("$[1].selections").value(3L));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/search -> 200 OK + hits with their ancestor path")
+    void search_ok() throws Exception {
+        given(sectorService.catalogVersion()).willReturn(9L);
+        given(sectorService.search("bev", 10)).willReturn(List.of(
+                new SectorSearchView(43L, "Beverages", 6L, List.of(
+                        new SectorView(1L, "Manufacturing", null),
+                        new SectorView(6L, "Food and Beverage", 1L)))
+        ));
+
+        mockMvc.perform(get("/api/sectors/search").param("q", "bev"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"9\""))
+                .andExpect(jsonPath("$[0].id").value(43L))
+                .andExpect(jsonPath("$[0].path[0].name").value("Manufacturing"))
+                .andExpect(jsonPath("$[0].path[1].id").value(6L));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/search -> 304 with Vary, if the CBOR tag is current")
+    void search_notModified() throws Exception {
+        given(sectorService.catalogVersion()).willReturn(9L);
+
+        mockMvc.perform(get("/api/sectors/search").param("q", "bev")
+                        .accept("application/cbor")
+                        .header("If-None-Match", "\"9-cbor\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().stringValues("Vary", hasItem("Accept")));
+
+        verify(sectorService, never()).search(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/search -> 400, if the limit is out of range")
+    void search_badLimit() throws Exception {
+        given(sectorService.search("bev", 500)).willThrow(new IllegalArgumentException("limit must be between 1 and 50"));
+
+        mockMvc.perform(get("/api/sectors/search").param("q", "bev").param("limit", "500"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/{id}/audience -> 200 OK + count and a page of usernames")
+    void audience_ok() throws Exception {
+        given(sectorAudienceService.getAudience(1L, 2, 2))
+                .willReturn(Optional.of(new SectorAudienceView(1L, 5L, List.of("carl", "dora"))));
+
+        mockMvc.perform(get("/api/sectors/1/audience").param("offset", "2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users").value(5L))
+                .andExpect(jsonPath("$.usernames[1]").value("dora"));
+    }
+
+    @Test
+    @DisplayName("GET /api/sectors/{id}/audience -> 404, if the sector does not exist")
+    void audience_notFound() throws Exception {
+        given(sectorAudienceService.getAudience(99L, 0, 100)).willReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/sectors/99/audience"))
+                .andExpect(status().isNotFound());
+    }
 }
@@ -0,0 +1,106 @@
+package com.gatto.sector.controller;
+
+import com.gatto.sector.config.BinaryFormatsConfig;
+import com.gatto.sector.config.ReactiveReadConfig;
+import com.gatto.sector.service.ReactiveUserSelectionService;
+import com.gatto.sector.service.UserSelectionService;
+import com.gatto.sector.view.UserSelectionView;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(UserSelectionReadHandler.class)
+@Import({ReactiveReadConfig.class, BinaryFormatsConfig.class})
+@ActiveProfiles("reactive")
+class UserSelectionReadHandlerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    ReactiveUserSelectionService reactiveUserSelectionService;
+
+    @Test
+    @DisplayName("GET /api/user-selections -> routed to the handler, ETag per format, 304 with Vary")
+    void get_etag() throws Exception {
+        given(reactiveUserSelectionService.getSelection("john"))
+                .willReturn(Mono.just(new UserSelectionView("john", List.of(2L, 1L))));
+        String version = UserSelectionService.versionOf(List.of(1L, 2L));
+
+        perform(get("/api/user-selections").param("username", "john"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + version + "\""))
+                .andExpect(jsonPath("$.sectorIds[0]").value(2));
+
+        perform(get("/api/user-selections").param("username", "john")
+                .accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + version + "-cbor\""));
+
+        perform(get("/api/user-selections").param("username", "john")
+                .header("If-None-Match", "\"" + version + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"" + version + "\""))
+                .andExpect(header().stringValues("Vary", hasItem("Accept")));
+    }
+
+    @Test
+    @DisplayName("GET /api/user-selections -> 404 for a user without a selection")
+    void get_notFound() throws Exception {
+        given(reactiveUserSelectionService.getSelection("nobody")).willReturn(Mono.empty());
+
+        perform(get("/api/user-selections").param("username", "nobody"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("GET /api/user-selections without username -> 400")
+    void get_missingUsername() throws Exception {
+        mockMvc.perform(get("/api/user-selections"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(reactiveUserSelectionService);
+    }
+
+    @Test
+    @DisplayName("GET /api/user-selections from the UI origin -> CORS headers expose the ETag")
+    void get_cors() throws Exception {
+        given(reactiveUserSelectionService.getSelection("john"))
+                .willReturn(Mono.just(new UserSelectionView("john", List.of(1L))));
+
+        perform(get("/api/user-selections").param("username", "john")
+                .header("Origin", "http://localhost:4200"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Access-Control-Allow-Origin", "http://localhost:4200"))
+                .andExpect(header().string("Access-Control-Expose-Headers", "ETag"));
+
+        mockMvc.perform(get("/api/user-selections").param("username", "john")
+                        .header("Origin", "http://evil.example"))
+                .andExpect(status().isForbidden());
+    }
+
+    private ResultActions perform(RequestBuilder builder) throws Exception {
+        MvcResult started = mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started));
+    }
+}
@@ -1,24 +1,33 @@
 package com.gatto.sector.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.gatto.sector.config.BinaryFormatsConfig;
+import com.gatto.sector.error.StaleSelectionException;
 import com.gatto.sector.service.UserSelectionService;
 import com.gatto.sector.view.UserSelectionView;
+import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(UserSelectionController.class)
+@Import(BinaryFormatsConfig.class)
 class UserSelectionViewControllerTest {
 
     @Autowired
@@ -36,7 +45,7 @@ class UserSelectionViewControllerTest {
         UserSelectionView requestDto = new UserSelectionView("john", List.of(1L));
         UserSelectionView savedDto   = new UserSelectionView("john", List.of(1L));
 
-        given(userSelectionService.saveSelection(any(UserSelectionView.class)))
+        given(userSelectionService.saveSelection(any(UserSelectionView.class), isNull()))
         .willReturn(savedDto);
 
         mockMvc.perform(post("/api/user-selections")
@@ -61,4 +70,112 @@ class UserSelectionViewControllerTest {
                 .andExpect(jsonPath("$.username").value("john"))
                 .andExpect(jsonPath("$.sectorIds[0]").value(1));
     }
+
+    @Test
+    @DisplayName("GET /api/user-selections -> 404 for a user without a selection")
+    void getProfile_notFound() throws Exception {
+        given(userSelectionService.getSelection("nobody"))
+                .willThrow(new EntityNotFoundException("No sector selections found for username: nobody"));
+
+        mockMvc.perform(get("/api/user-selections").param("username", "nobody"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("POST /api/user-selections accepts and returns CBOR")
+    void saveProfile_cbor() throws Exception {
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+        UserSelectionView profile = new UserSelectionView("john", List.of(1L, 2L));
+
+        given(userSelectionService.saveSelection(profile, null))
+                .willReturn(profile);
+
+        byte[] body = mockMvc.perform(post("/api/user-selections")
+                        .contentType("application/cbor")
+                        .accept("application/cbor")
+                        .content(cbor.writeValueAsBytes(profile)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(cbor.readValue(body, UserSelectionView.class)).isEqualTo(profile);
+    }
+
+    @Test
+    @DisplayName("GET /api/user-selections -> ETag of the selection, 304 when it still matches")
+    void getProfile_etag() throws Exception {
+        given(userSelectionService.getSelection("john"))
+                .willReturn(new UserSelectionView("john", List.of(2L, 1L)));
+        String etag = "\"" + UserSelectionService.versionOf(List.of(1L, 2L)) + "\"";
+
+        mockMvc.perform(get("/api/user-selections").param("username", "john"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag));
+
+        mockMvc.perform(get("/api/user-selections").param("username", "john")
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(header().stringValues("Vary", hasItem("Accept")));
+    }
+
+    @Test
+    @DisplayName("GET /api/user-selections -> each format has its own ETag")
+    void getProfile_etagPerFormat() throws Exception {
+        given(userSelectionService.getSelection("john"))
+                .willReturn(new UserSelectionView("john", List.of(1L, 2L)));
+        String version = UserSelectionService.versionOf(List.of(1L, 2L));
+
+        mockMvc.perform(get("/api/user-selections").param("username", "john")
+                        .accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + version + "-cbor\""));
+
+        mockMvc.perform(get("/api/user-selections").param("username", "john")
+                        .header("If-None-Match", "\"" + version + "-cbor\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("GET /api/user-selections with Accept: */*, application/cbor -> CBOR body and CBOR ETag")
+    void getProfile_etagFollowsNegotiatedFormat() throws Exception {
+        given(userSelectionService.getSelection("john"))
+                .willReturn(new UserSelectionView("john", List.of(1L, 2L)));
+        String version = UserSelectionService.versionOf(List.of(1L, 2L));
+
+        mockMvc.perform(get("/api/user-selections").param("username", "john")
+                        .header("Accept", "*/*, application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andExpect(header().string("ETag", "\"" + version + "-cbor\""));
+
+        mockMvc.perform(get("/api/user-selections").param("username", "john")
+                        .header("Accept", "application/cbor;q=0.5, */*"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/json"))
+                .andExpect(header().string("ETag", "\"" + version + "\""));
+    }
+
+    @Test
+    @DisplayName("POST /api/user-selections with If-Match -> passes the versions on, 412 when stale")
+    void saveProfile_ifMatch() throws Exception {
+        UserSelectionView profile = new UserSelectionView("john", List.of(1L));
+        given(userSelectionService.saveSelection(profile, List.of("abc", "*")))
+                .willReturn(profile);
+        given(userSelectionService.saveSelection(profile, List.of("old")))
+                .willThrow(new StaleSelectionException("john"));
+
+        mockMvc.perform(post("/api/user-selections")
+                        .contentType("application/json")
+                        .header("If-Match", "\"abc-smile\", W/\"weak\", *")
+                        .content(objectMapper.writeValueAsString(profile)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + UserSelectionService.versionOf(List.of(1L)) + "\""));
+
+        mockMvc.perform(post("/api/user-selections")
+                        .contentType("application/json")
+                        .header("If-Match", "\"old\"")
+                        .content(objectMapper.writeValueAsString(profile)))
+                .andExpect(status().isPreconditionFailed());
+    }
 }
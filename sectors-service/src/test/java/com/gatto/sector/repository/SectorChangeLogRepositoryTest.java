@@ -0,0 +1,40 @@
+package com.gatto.sector.repository;
+
+import com.gatto.sector.view.SectorChangeView;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(SectorChangeLogRepository.class)
+class SectorChangeLogRepositoryTest {
+
+    @Autowired
+    private SectorChangeLogRepository changeLog;
+
+    @Test
+    void appendAllLogsConsecutiveVersions() {
+        long before = changeLog.state().version();
+
+        long last = changeLog.appendAll(List.of(
+                new SectorChangeView(0, 1_000_001L, "Batch root", null, false),
+                new SectorChangeView(0, 1_000_002L, "Batch child", 1_000_001L, false),
+                new SectorChangeView(0, 1_000_003L, null, null, true)
+        ));
+
+        assertThat(last).isEqualTo(before + 3);
+        assertThat(changeLog.state().version()).isEqualTo(last);
+        assertThat(changeLog.findSince(before, 10)).containsExactly(
+                new SectorChangeView(before + 1, 1_000_001L, "Batch root", null, false),
+                new SectorChangeView(before + 2, 1_000_002L, "Batch child", 1_000_001L, false),
+                new SectorChangeView(before + 3, 1_000_003L, null, null, true)
+        );
+    }
+}
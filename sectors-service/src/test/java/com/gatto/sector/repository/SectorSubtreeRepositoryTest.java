@@ -0,0 +1,72 @@
+package com.gatto.sector.repository;
+
+import com.gatto.sector.entity.Sector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(SectorSubtreeRepository.class)
+class SectorSubtreeRepositoryTest {
+
+    @Autowired
+    private SectorSubtreeRepository subtreeRepository;
+
+    @Autowired
+    private SectorRepository sectorRepository;
+
+    @Autowired
+    private UserSectorSelectionRepository selectionRepository;
+
+    @Autowired
+    private AppUserRepository appUserRepository;
+
+    @Test
+    void deleteSubtreeReassignsSelectionsToTheParent() {
+        Sector parent = sector("Subtree parent", null);
+        Sector root = sector("Subtree root", parent);
+        Sector child = sector("Subtree child", root);
+        Sector grandchild = sector("Subtree grandchild", child);
+        // the JDBC inserts below bypass the persistence context, so the sectors are flushed first
+        sectorRepository.flush();
+        selectionRepository.insertAll(appUserRepository.idFor("subtree-anna"), List.of(child.getId(), grandchild.getId()));
+        selectionRepository.insertAll(appUserRepository.idFor("subtree-ben"), List.of(parent.getId(), root.getId()));
+
+        SectorSubtreeRepository.DeletedSubtree deleted = subtreeRepository.deleteSubtree(root.getId(), true);
+
+        assertThat(deleted.sectorIds()).containsExactly(root.getId(), child.getId(), grandchild.getId());
+        assertThat(deleted.usernames()).containsExactlyInAnyOrder("subtree-anna", "subtree-ben");
+        assertThat(deleted.reassignedTo()).isEqualTo(parent.getId());
+        // ben already had the parent
+        assertThat(deleted.reassigned()).isEqualTo(1L);
+        assertThat(selectionRepository.findSectorIdsByUsername("subtree-anna")).containsExactly(parent.getId());
+        assertThat(selectionRepository.findSectorIdsByUsername("subtree-ben")).containsExactly(parent.getId());
+        assertThat(sectorRepository.findExistingIds(deleted.sectorIds())).isEmpty();
+    }
+
+    @Test
+    void moveRefusesToPutASectorUnderItsOwnBranch() {
+        Sector root = sector("Move root", null);
+        Sector child = sector("Move child", root);
+        Sector other = sector("Move other", null);
+        sectorRepository.flush();
+
+        assertThat(subtreeRepository.move(root.getId(), child.getId())).isFalse();
+        assertThat(subtreeRepository.move(root.getId(), other.getId())).isTrue();
+        assertThat(subtreeRepository.move(root.getId(), null)).isTrue();
+    }
+
+    private Sector sector(String name, Sector parent) {
+        Sector sector = new Sector();
+        sector.setName(name);
+        sector.setParent(parent);
+        return sectorRepository.save(sector);
+    }
+}
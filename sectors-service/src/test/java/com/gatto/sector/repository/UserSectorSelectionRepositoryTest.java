@@ -1,5 +1,6 @@
 package com.gatto.sector.repository;
 
+import com.gatto.sector.entity.AppUser;
 import com.gatto.sector.entity.Sector;
 import com.gatto.sector.entity.UserSectorSelection;
 import org.junit.jupiter.api.Test;
@@ -21,8 +22,11 @@ class UserSectorSelectionRepositoryTest {
     @Autowired
     private SectorRepository sectorRepository;
 
+    @Autowired
+    private AppUserRepository appUserRepository;
+
     @Test
-    void saveAndFindByUsername() {
+    void saveAndFindByUserId() {
         // given
         Sector sector1 = new Sector();
         sector1.setName("Test sector 1");
@@ -32,30 +36,22 @@ class UserSectorSelectionRepositoryTest {
         sector2.setName("Test sector 2");
         Sector savedSector2 = sectorRepository.save(sector2);
 
-        UserSectorSelection row1 = new UserSectorSelection();
-        row1.setUsername("john");
-        row1.setSector(savedSector1);
-
-        UserSectorSelection row2 = new UserSectorSelection();
-        row2.setUsername("john");
-        row2.setSector(savedSector2);
+        AppUser john = appUserRepository.save(AppUser.builder().username("john").build());
 
-        userSectorSelectionRepository.save(row1);
-        userSectorSelectionRepository.save(row2);
+        userSectorSelectionRepository.save(selection(john, savedSector1));
+        userSectorSelectionRepository.save(selection(john, savedSector2));
 
         // when
-        List<UserSectorSelection> selections = userSectorSelectionRepository.findByUsername("john");
+        List<Long> sectorIds = userSectorSelectionRepository.findSectorIdsByUserId(john.getId());
 
         // then
-        assertThat(selections).hasSize(2);
-        assertThat(selections)
-                .extracting(s -> s.getSector().getName())
-                .containsExactlyInAnyOrder("Test sector 1", "Test sector 2");
-
+        assertThat(sectorIds).containsExactlyInAnyOrder(savedSector1.getId(), savedSector2.getId());
+        assertThat(userSectorSelectionRepository.findSectorIdsByUsername("john"))
+                .containsExactlyInAnyOrder(savedSector1.getId(), savedSector2.getId());
     }
 
     @Test
-    void deleteByUsername_removesAllRowsForUser() {
+    void deleteByUserIdAndSectorIdIn_allSectors_removesAllRowsForUser() {
         // given
         Sector sector1 = new Sector();
         sector1.setName("Test sector 1");
@@ -65,22 +61,55 @@ class UserSectorSelectionRepositoryTest {
         sector2.setName("Test sector 2");
         Sector savedSector2 = sectorRepository.save(sector2);
 
-        UserSectorSelection row1 = new UserSectorSelection();
-        row1.setUsername("anna");
-        row1.setSector(savedSector1);
+        AppUser anna = appUserRepository.save(AppUser.builder().username("anna").build());
+
+        userSectorSelectionRepository.save(selection(anna, savedSector1));
+        userSectorSelectionRepository.save(selection(anna, savedSector2));
+
+        // when
+        int deleted = userSectorSelectionRepository.deleteByUserIdAndSectorIdIn(anna.getId(),
+                List.of(savedSector1.getId(), savedSector2.getId()));
+
+        // then
+        assertThat(deleted).isEqualTo(2);
+        assertThat(userSectorSelectionRepository.findSectorIdsByUserId(anna.getId())).isEmpty();
+    }
+
+    @Test
+    void insertAll_thenDeleteByUserIdAndSectorIdIn_removesOnlyGivenSectors() {
+        // given
+        Sector sector1 = new Sector();
+        sector1.setName("Test sector 1");
+        Sector savedSector1 = sectorRepository.saveAndFlush(sector1);
+
+        Sector sector2 = new Sector();
+        sector2.setName("Test sector 2");
+        Sector savedSector2 = sectorRepository.saveAndFlush(sector2);
 
-        UserSectorSelection row2 = new UserSectorSelection();
-        row2.setUsername("anna");
-        row2.setSector(savedSector2);
+        int mary = appUserRepository.idFor("mary");
 
-        userSectorSelectionRepository.save(row1);
-        userSectorSelectionRepository.save(row2);
+        // the JDBC insert below bypasses the persistence context, so the sectors must be written first
+        userSectorSelectionRepository.insertAll(mary, List.of(savedSector1.getId(), savedSector2.getId()));
 
         // when
-        userSectorSelectionRepository.deleteByUsername("anna");
+        userSectorSelectionRepository.deleteByUserIdAndSectorIdIn(mary, List.of(savedSector1.getId()));
 
         // then
-        assertThat(userSectorSelectionRepository.findByUsername("anna")).isEmpty();
+        assertThat(userSectorSelectionRepository.findSectorIdsByUserId(mary))
+                .containsExactly(savedSector2.getId());
+    }
+
+    @Test
+    void idFor_registersAUsernameOnce() {
+        int first = appUserRepository.idFor("dictionary-user");
+
+        assertThat(appUserRepository.idFor("dictionary-user")).isEqualTo(first);
+        assertThat(appUserRepository.findById(first)).map(AppUser::getUsername).contains("dictionary-user");
+        assertThat(appUserRepository.idFor("another-user")).isNotEqualTo(first);
+    }
+
+    private static UserSectorSelection selection(AppUser user, Sector sector) {
+        return new UserSectorSelection(new UserSectorSelection.Key(), user, sector);
     }
 
 }
@@ -0,0 +1,59 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.repository.UserSectorSelectionReactiveRepository;
+import com.gatto.sector.view.UserSelectionView;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveUserSelectionServiceTest {
+
+    @Mock
+    private UserSelectionService userSelectionService;
+
+    @Mock
+    private UserSectorSelectionReactiveRepository reactiveSelectionRepo;
+
+    @InjectMocks
+    private ReactiveUserSelectionService service;
+
+    @Test
+    @DisplayName("getSelection() answers a known selection without a query")
+    void getSelection_known() {
+        when(userSelectionService.knownSelection("john")).thenReturn(List.of(1L, 2L));
+
+        assertThat(service.getSelection("john").block()).isEqualTo(new UserSelectionView("john", List.of(1L, 2L)));
+        verifyNoInteractions(reactiveSelectionRepo);
+    }
+
+    @Test
+    @DisplayName("getSelection() reads a cache miss over R2DBC and caches it")
+    void getSelection_readsAndCaches() {
+        when(userSelectionService.knownSelection("john")).thenReturn(null);
+        when(reactiveSelectionRepo.findSectorIdsByUsername("john")).thenReturn(Flux.just(1L, 2L));
+        when(userSelectionService.remember("john", List.of(1L, 2L))).thenReturn(List.of(1L, 2L));
+
+        assertThat(service.getSelection("john").block()).isEqualTo(new UserSelectionView("john", List.of(1L, 2L)));
+    }
+
+    @Test
+    @DisplayName("getSelection() is empty for a user without a selection")
+    void getSelection_none() {
+        when(userSelectionService.knownSelection("nobody")).thenReturn(null);
+        when(reactiveSelectionRepo.findSectorIdsByUsername("nobody")).thenReturn(Flux.empty());
+        when(userSelectionService.remember(any(), any())).thenReturn(List.of());
+
+        assertThat(service.getSelection("nobody").blockOptional()).isEmpty();
+    }
+}
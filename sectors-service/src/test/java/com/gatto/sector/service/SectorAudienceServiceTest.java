@@ -0,0 +1,111 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.entity.AppUser;
+import com.gatto.sector.event.SectorSubtreeDeletedEvent;
+import com.gatto.sector.event.UserSelectionChangedEvent;
+import com.gatto.sector.repository.AppUserRepository;
+import com.gatto.sector.repository.UserSectorSelectionRepository;
+import com.gatto.sector.repository.UserSectorSelectionRepositoryCustom.SelectionHandler;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorAudienceView;
+import com.gatto.sector.view.SectorView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SectorAudienceServiceTest {
+
+    @Mock
+    private UserSectorSelectionRepository userSelectionRepo;
+
+    @Mock
+    private AppUserRepository appUserRepo;
+
+    @Mock
+    private SectorCatalog catalog;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private SectorAudienceService service;
+
+    @BeforeEach
+    void setUp() {
+        when(catalog.current()).thenReturn(SectorTree.of(1L, List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(6L, "Food and Beverage", 1L),
+                new SectorView(43L, "Beverages", 6L),
+                new SectorView(2L, "Service", null)
+        )));
+        doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        doAnswer(invocation -> {
+            SelectionHandler handler = invocation.getArgument(0);
+            handler.accept(1, 6L);
+            handler.accept(2, 43L);
+            handler.accept(2, 6L);
+            handler.accept(3, 2L);
+            return null;
+        }).when(userSelectionRepo).forEachSelection(any());
+        lenient().when(appUserRepo.findAllById(any())).thenReturn(List.of(
+                new AppUser(1, "anna"), new AppUser(2, "ben"), new AppUser(3, "carl"), new AppUser(4, "dora")));
+
+        service = new SectorAudienceService(userSelectionRepo, appUserRepo, catalog, transactionTemplate);
+        service.afterSingletonsInstantiated();
+    }
+
+    @Test
+    @DisplayName("getAudience() counts each user once across the whole subtree")
+    void getAudience_unionsSubtree() {
+        assertThat(service.getAudience(1L, 0, 10)).contains(new SectorAudienceView(1L, 2L, List.of("anna", "ben")));
+        assertThat(service.getAudience(43L, 0, 10)).contains(new SectorAudienceView(43L, 1L, List.of("ben")));
+        assertThat(service.getAudience(99L, 0, 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("getAudience() pages usernames in user id order; limit 0 only counts")
+    void getAudience_pages() {
+        service.onSelectionChanged(new UserSelectionChangedEvent(4, "dora", List.of(43L), List.of(43L), List.of()));
+
+        assertThat(service.getAudience(1L, 1, 1)).contains(new SectorAudienceView(1L, 3L, List.of("ben")));
+        assertThat(service.getAudience(1L, 3, 5)).contains(new SectorAudienceView(1L, 3L, List.of()));
+        assertThat(service.getAudience(1L, 0, 0)).contains(new SectorAudienceView(1L, 3L, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> service.getAudience(1L, 0, SectorAudienceService.MAX_PAGE + 1));
+    }
+
+    @Test
+    @DisplayName("onSelectionChanged() moves the user between sectors without querying again")
+    void onSelectionChanged_appliesDelta() {
+        service.onSelectionChanged(new UserSelectionChangedEvent(1, "anna", List.of(2L), List.of(2L), List.of(6L)));
+
+        assertThat(service.getAudience(1L, 0, 0).orElseThrow().users()).isEqualTo(1L);
+        assertThat(service.getAudience(2L, 0, 10).orElseThrow().usernames()).containsExactly("anna", "carl");
+        verify(userSelectionRepo, times(1)).forEachSelection(any());
+    }
+
+    @Test
+    @DisplayName("onSubtreeDeleted() gives the parent everyone who had anything in the branch")
+    void onSubtreeDeleted_movesAudienceToParent() {
+        SectorAudienceView before = service.getAudience(1L, 0, 10).orElseThrow();
+
+        service.onSubtreeDeleted(new SectorSubtreeDeletedEvent(List.of(6L, 43L), List.of("anna", "ben"), 1L, 2L));
+
+        assertThat(service.getAudience(1L, 0, 10)).contains(before);
+        assertThat(service.getAudience(6L, 0, 10)).isPresent().get().extracting(SectorAudienceView::users).isEqualTo(0L);
+    }
+}
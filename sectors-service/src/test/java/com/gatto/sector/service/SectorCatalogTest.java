@@ -0,0 +1,146 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.event.SectorCatalogChangedEvent;
+import com.gatto.sector.repository.SectorChangeLogRepository;
+import com.gatto.sector.repository.SectorRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorView;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SectorCatalogTest {
+
+    @Mock
+    private SectorRepository repository;
+
+    @Mock
+    private SectorChangeLogRepository changeLog;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private SectorCatalog catalog;
+
+    @Test
+    @DisplayName("current() loads the snapshot once and serves it afterwards")
+    void current_loadsOnce() {
+        when(changeLog.state()).thenReturn(new SectorChangeLogRepository.State(4L, 1L));
+        when(repository.findAllViews()).thenReturn(List.of(new SectorView(1L, "Manufacturing", null)));
+
+        SectorTree first = catalog.current();
+        SectorTree second = catalog.current();
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.version()).isEqualTo(4L);
+        assertThat(first.find(1L)).isPresent();
+        verify(repository, times(1)).findAllViews();
+    }
+
+    @Test
+    @DisplayName("afterCommit() replaces the snapshot and takes the logged version")
+    void afterCommit_appliesChange() {
+        when(changeLog.state()).thenReturn(new SectorChangeLogRepository.State(4L, 1L));
+        when(repository.findAllViews()).thenReturn(List.of(new SectorView(1L, "Manufacturing", null)));
+        catalog.current();
+
+        catalog.afterCommit(5L, tree -> tree.with(new SectorView(2L, "Service", null)));
+
+        SectorTree after = catalog.current();
+        assertThat(after.version()).isEqualTo(5L);
+        assertThat(after.find(2L)).contains(new SectorView(2L, "Service", null));
+        verify(repository, times(1)).findAllViews();
+        verify(changeLog, times(1)).state();
+    }
+
+    @Test
+    @DisplayName("afterCommit() out of version order catches up from the change log, so a version is one tree")
+    void afterCommit_outOfOrder() {
+        when(changeLog.state()).thenReturn(new SectorChangeLogRepository.State(4L, 1L),
+                new SectorChangeLogRepository.State(6L, 1L));
+        when(repository.findAllViews()).thenReturn(List.of(new SectorView(1L, "Manufacturing", null)));
+        catalog.current();
+        when(changeLog.findSince(4L, SectorService.MAX_CHANGES + 1)).thenReturn(List.of(
+                new SectorChangeView(5L, 2L, "Service", null, false),
+                new SectorChangeView(6L, 3L, "Other", null, false)));
+
+        // change 6 commits first; its hook alone must not publish a version 6 without change 5
+        catalog.afterCommit(6L, tree -> tree.with(new SectorView(3L, "Other", null)));
+        SectorTree six = catalog.current();
+        catalog.afterCommit(5L, tree -> tree.with(new SectorView(2L, "Service", null)));
+
+        assertThat(six.version()).isEqualTo(6L);
+        assertThat(six.find(2L)).isPresent();
+        assertThat(six.find(3L)).isPresent();
+        assertThat(catalog.current()).isSameAs(six);
+        verify(repository, times(1)).findAllViews();
+    }
+
+    @Test
+    @DisplayName("afterCommit() reloads when the change log no longer reaches back to the snapshot")
+    void afterCommit_gapPastCompaction() {
+        when(changeLog.state()).thenReturn(new SectorChangeLogRepository.State(4L, 1L),
+                new SectorChangeLogRepository.State(8L, 7L));
+        when(repository.findAllViews()).thenReturn(List.of(new SectorView(1L, "Manufacturing", null)),
+                List.of(new SectorView(1L, "Manufacturing", null), new SectorView(2L, "Service", null)));
+        catalog.current();
+
+        catalog.afterCommit(8L, tree -> tree.without(1L));
+
+        SectorTree after = catalog.current();
+        assertThat(after.version()).isEqualTo(8L);
+        assertThat(after.find(1L)).isPresent();
+        assertThat(after.find(2L)).isPresent();
+        verify(changeLog, never()).findSince(anyLong(), anyInt());
+    }
+
+    @Test
+    @DisplayName("refresh() catches up with changes committed on another instance and publishes them")
+    void refresh_catchesUpFromChangeLog() {
+        when(changeLog.state()).thenReturn(new SectorChangeLogRepository.State(4L, 1L),
+                new SectorChangeLogRepository.State(4L, 1L),
+                new SectorChangeLogRepository.State(5L, 1L));
+        when(repository.findAllViews()).thenReturn(List.of(new SectorView(1L, "Manufacturing", null)));
+        SectorTree loaded = catalog.current();
+        List<SectorChangeView> remote = List.of(new SectorChangeView(5L, 1L, "Industry", null, false));
+        when(changeLog.findSince(4L, SectorService.MAX_CHANGES + 1)).thenReturn(remote);
+
+        catalog.refresh();
+        assertThat(catalog.current()).isSameAs(loaded);
+
+        catalog.refresh();
+        SectorTree after = catalog.current();
+        assertThat(after.version()).isEqualTo(5L);
+        assertThat(after.find(1L)).contains(new SectorView(1L, "Industry", null));
+        verify(eventPublisher).publishEvent(new SectorCatalogChangedEvent(5L, false, remote));
+        verify(repository, times(1)).findAllViews();
+    }
+
+    @Test
+    @DisplayName("refresh() before the first read does not load the catalog")
+    void refresh_beforeLoad() {
+        catalog.refresh();
+
+        verifyNoInteractions(repository, changeLog, eventPublisher);
+    }
+
+    @Test
+    @DisplayName("afterCommit() before the first read does not load the catalog")
+    void afterCommit_beforeLoad() {
+        catalog.afterCommit(5L, tree -> tree.without(1L));
+
+        verifyNoInteractions(repository, changeLog);
+    }
+}
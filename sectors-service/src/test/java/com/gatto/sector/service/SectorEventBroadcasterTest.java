@@ -0,0 +1,160 @@
+package com.gatto.sector.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gatto.sector.controller.SectorController;
+import com.gatto.sector.event.SectorCatalogChangedEvent;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorChangesView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class SectorEventBroadcasterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SectorService sectorService = mock(SectorService.class);
+
+    @Test
+    @DisplayName("flush() sends one coalesced event with the latest state per sector")
+    void flush_coalescesChanges() throws Exception {
+        SectorEventBroadcaster broadcaster = broadcaster(8, Runnable::run);
+        MvcResult stream = subscribe(broadcaster, null);
+
+        broadcaster.onCatalogChanged(changed(new SectorChangeView(11L, 7L, "Root", null, false)));
+        broadcaster.onCatalogChanged(changed(new SectorChangeView(12L, 8L, "Child", 7L, false)));
+        broadcaster.onCatalogChanged(changed(new SectorChangeView(13L, 7L, "Renamed", null, false)));
+        broadcaster.flush();
+        broadcaster.flush();
+
+        assertThat(stream.getResponse().getContentAsString()).isEqualTo("""
+                id:13
+                event:changes
+                data:{"version":13,"fullResync":false,"changes":[\
+                {"version":12,"id":8,"name":"Child","parentId":7,"deleted":false},\
+                {"version":13,"id":7,"name":"Renamed","parentId":null,"deleted":false}]}
+
+                """);
+    }
+
+    @Test
+    @DisplayName("flush() turns a resync into a single resync event, discarding pending deltas")
+    void flush_resync() throws Exception {
+        SectorEventBroadcaster broadcaster = broadcaster(8, Runnable::run);
+        MvcResult stream = subscribe(broadcaster, null);
+
+        broadcaster.onCatalogChanged(changed(new SectorChangeView(11L, 7L, "Root", null, false)));
+        broadcaster.onCatalogChanged(new SectorCatalogChangedEvent(12L, true, List.of()));
+        broadcaster.onCatalogChanged(changed(new SectorChangeView(13L, 7L, "Renamed", null, false)));
+        broadcaster.flush();
+
+        assertThat(stream.getResponse().getContentAsString())
+                .startsWith("id:13\nevent:resync\n")
+                .contains("\"changes\":[]");
+    }
+
+    @Test
+    @DisplayName("subscribe() sends the Last-Event-ID catch-up before live events")
+    void subscribe_sendsCatchUpFirst() throws Exception {
+        SectorEventBroadcaster broadcaster = broadcaster(8, Runnable::run);
+        MvcResult stream = subscribe(broadcaster, new SectorChangesView(12L, false, List.of(
+                new SectorChangeView(12L, 7L, "Root", null, false))));
+
+        broadcaster.onCatalogChanged(changed(new SectorChangeView(13L, 8L, "Child", 7L, false)));
+        broadcaster.flush();
+
+        String body = stream.getResponse().getContentAsString();
+        assertThat(body.indexOf("id:12\n")).isNotNegative().isLessThan(body.indexOf("id:13\n"));
+    }
+
+    @Test
+    @DisplayName("subscribe() holds a batch flushed while the catch-up is read and sends it after")
+    void subscribe_holdsBatchFlushedDuringCatchUp() throws Exception {
+        SectorEventBroadcaster broadcaster = broadcaster(8, Runnable::run);
+        MvcResult stream = subscribeCatchingUp(broadcaster, () -> {
+            // committed after the change log was read: missing from the catch-up
+            broadcaster.onCatalogChanged(changed(new SectorChangeView(13L, 8L, "Child", 7L, false)));
+            broadcaster.flush();
+            return new SectorChangesView(12L, false, List.of(new SectorChangeView(12L, 7L, "Root", null, false)));
+        });
+
+        String body = stream.getResponse().getContentAsString();
+        assertThat(body.indexOf("id:12\n")).isNotNegative().isLessThan(body.indexOf("id:13\n"));
+    }
+
+    @Test
+    @DisplayName("subscribe() drops a batch flushed while the catch-up is read if the catch-up covers it")
+    void subscribe_dropsBatchCoveredByCatchUp() throws Exception {
+        SectorEventBroadcaster broadcaster = broadcaster(8, Runnable::run);
+        MvcResult stream = subscribeCatchingUp(broadcaster, () -> {
+            broadcaster.onCatalogChanged(changed(new SectorChangeView(12L, 7L, "Old", null, false)));
+            broadcaster.flush();
+            return new SectorChangesView(13L, false, List.of(
+                    new SectorChangeView(12L, 7L, "Old", null, false),
+                    new SectorChangeView(13L, 7L, "Renamed", null, false)));
+        });
+        broadcaster.onCatalogChanged(changed(new SectorChangeView(14L, 8L, "Child", 7L, false)));
+        broadcaster.flush();
+
+        String body = stream.getResponse().getContentAsString();
+        assertThat(body).doesNotContain("id:12\n");
+        assertThat(body.indexOf("id:13\n")).isNotNegative().isLessThan(body.indexOf("id:14\n"));
+    }
+
+    @Test
+    @DisplayName("a subscriber whose buffer is full is dropped and completed by the sender")
+    void slowSubscriber_isDropped() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        SectorEventBroadcaster broadcaster = broadcaster(2, queued::add);
+        MvcResult stream = subscribe(broadcaster, null);
+
+        for (long version = 11; version <= 13; version++) {
+            broadcaster.onCatalogChanged(changed(new SectorChangeView(version, version, "S" + version, null, false)));
+            broadcaster.flush();
+        }
+
+        assertThat(broadcaster.subscriberCount()).isZero();
+        assertThat(registry.counter("sectors.events.dropped").count()).isEqualTo(1.0);
+
+        // the stream ends without any of the queued events
+        queued.forEach(Runnable::run);
+        assertThat(stream.getAsyncResult(1000)).isNull();
+        assertThat(stream.getResponse().getContentAsString()).isEmpty();
+    }
+
+    private SectorEventBroadcaster broadcaster(int bufferSize, Executor senders) {
+        return new SectorEventBroadcaster(new ObjectMapper(), registry, bufferSize, Duration.ofMinutes(1), senders);
+    }
+
+    private MvcResult subscribe(SectorEventBroadcaster broadcaster, SectorChangesView catchUp) throws Exception {
+        return subscribeCatchingUp(broadcaster, () -> catchUp);
+    }
+
+    private MvcResult subscribeCatchingUp(SectorEventBroadcaster broadcaster, Supplier<SectorChangesView> catchUp) throws Exception {
+        given(sectorService.getChanges(10L)).willAnswer(invocation -> catchUp.get());
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new SectorController(sectorService,
+                mock(SectorImportService.class), mock(SectorStatsService.class), broadcaster,
+                mock(SectorAudienceService.class))).build();
+        return mockMvc.perform(get("/api/sectors/events").header("Last-Event-ID", "10"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private static SectorCatalogChangedEvent changed(SectorChangeView change) {
+        return new SectorCatalogChangedEvent(change.version(), false, List.of(change));
+    }
+}
@@ -0,0 +1,123 @@
+package com.gatto.sector.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gatto.sector.event.SectorCatalogChangedEvent;
+import com.gatto.sector.repository.SectorBulkRepository;
+import com.gatto.sector.repository.SectorChangeLogRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorImportView;
+import com.gatto.sector.view.SectorView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SectorImportServiceTest {
+
+    @Mock
+    private SectorBulkRepository bulkRepository;
+
+    @Mock
+    private SectorChangeLogRepository changeLog;
+
+    @Mock
+    private SectorCatalog catalog;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private SectorImportService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new SectorImportService(bulkRepository, changeLog, catalog, new ObjectMapper(),
+                new TransactionTemplate(transactionManager), eventPublisher);
+        lenient().when(catalog.current()).thenReturn(SectorTree.of(1L, List.of(new SectorView(1L, "Manufacturing", null))));
+    }
+
+    @Test
+    @DisplayName("importSectors() copies NDJSON rows with parents before children")
+    void importNdjson() throws Exception {
+        String body = """
+                {"id":43,"name":"Beverages","parentId":6}
+                {"id":6,"name":"Food and Beverage","parentId":1}
+                {"id":2,"name":"Service","parentId":null}
+                """;
+        when(bulkRepository.copyIn(any())).thenReturn(3L);
+        when(changeLog.resync()).thenReturn(20L);
+
+        SectorImportView result = service.importSectors(stream(body), SectorImportService.NDJSON);
+
+        assertThat(result.imported()).isEqualTo(3L);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SectorView>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bulkRepository).copyIn(captor.capture());
+        assertThat(captor.getValue()).extracting(SectorView::id).containsExactly(6L, 43L, 2L);
+        verify(catalog).afterCommit(eq(20L), any());
+        verify(eventPublisher).publishEvent(new SectorCatalogChangedEvent(20L, true, List.of()));
+    }
+
+    @Test
+    @DisplayName("importSectors() reads CSV with a header and quoted names")
+    void importCsv() throws Exception {
+        String body = """
+                id,name,parentId
+                62,"Forgings, Fasteners",1
+                75,"The ""CNC"" shop",
+                """;
+        when(bulkRepository.copyIn(any())).thenReturn(2L);
+
+        service.importSectors(stream(body), SectorImportService.CSV);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SectorView>> captor = ArgumentCaptor.forClass(List.class);
+        verify(bulkRepository).copyIn(captor.capture());
+        assertThat(captor.getValue()).containsExactly(
+                new SectorView(62L, "Forgings, Fasteners", 1L),
+                new SectorView(75L, "The \"CNC\" shop", null)
+        );
+    }
+
+    @Test
+    @DisplayName("importSectors() rejects unknown parents, duplicates, existing ids and cycles before copying")
+    void importRejectsInvalidPayloads() {
+        List<String> invalid = List.of(
+                "{\"id\":5,\"name\":\"Orphan\",\"parentId\":99}",
+                "{\"id\":5,\"name\":\"A\"}\n{\"id\":5,\"name\":\"B\"}",
+                "{\"id\":1,\"name\":\"Manufacturing\"}",
+                "{\"id\":5,\"name\":\"A\",\"parentId\":6}\n{\"id\":6,\"name\":\"B\",\"parentId\":5}",
+                "{\"id\":5,\"name\":\"\"}",
+                "{\"id\":5,"
+        );
+
+        for (String body : invalid) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> service.importSectors(stream(body), SectorImportService.NDJSON), body);
+        }
+        verifyNoInteractions(bulkRepository, changeLog, eventPublisher);
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
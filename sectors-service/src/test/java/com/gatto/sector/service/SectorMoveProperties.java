@@ -0,0 +1,211 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.entity.Sector;
+import com.gatto.sector.error.SectorCycleException;
+import com.gatto.sector.repository.SectorChangeLogRepository;
+import com.gatto.sector.repository.SectorRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorView;
+import net.jqwik.api.Arbitraries;
+import net.jqwik.api.Arbitrary;
+import net.jqwik.api.Combinators;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.Provide;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Random forests (ids 1..n, every parent a smaller id) and random moves; parent 0 moves a sector
+ * to the root.
+ */
+class SectorMoveProperties {
+
+    private static final int THREADS = 4;
+
+    record Move(long id, long parentId) {}
+
+    record Scenario(List<SectorView> sectors, List<Move> moves) {}
+
+    @Property(tries = 300)
+    void cycleCheckAgreesWithSubtreeMembership(@ForAll("scenarios") Scenario scenario) {
+        SectorTree tree = SectorTree.of(1L, scenario.sectors());
+
+        for (Move move : scenario.moves()) {
+            if (move.parentId() == 0) {
+                continue;
+            }
+            boolean cycle = move.parentId() == move.id() || tree.isDescendant(move.parentId(), move.id());
+            assertThat(tree.isAtOrAbove(move.id(), move.parentId(), Map.of())).isEqualTo(cycle);
+            if (!cycle) {
+                tree = tree.with(new SectorView(move.id(), "S" + move.id(), move.parentId()));
+            }
+        }
+        assertAcyclic(tree);
+    }
+
+    @Property(tries = 100)
+    void concurrentMovesKeepTheCatalogAcyclic(@ForAll("scenarios") Scenario scenario) throws Exception {
+        Map<Long, SectorView> database = new ConcurrentHashMap<>();
+        scenario.sectors().forEach(sector -> database.put(sector.id(), sector));
+
+        SectorRepository repository = mock(SectorRepository.class);
+        when(repository.findAllViews()).thenAnswer(invocation -> List.copyOf(database.values()));
+        when(repository.findById(anyLong())).thenAnswer(invocation ->
+                Optional.ofNullable(database.get(invocation.<Long>getArgument(0))).map(SectorMoveProperties::entity));
+        ReentrantLock writes = new ReentrantLock();
+        when(repository.save(any(Sector.class))).thenAnswer(invocation -> {
+            holdUntilCompletion(writes);
+            Sector sector = invocation.getArgument(0);
+            database.put(sector.getId(), SectorView.fromEntity(sector));
+            return sector;
+        });
+        SectorChangeLogRepository changeLog = changeLog();
+        SectorCatalog catalog = new SectorCatalog(repository, changeLog, event -> {});
+        SectorService service = new SectorService(repository, catalog, changeLog, null, event -> {});
+        TransactionTemplate transactions = new TransactionTemplate(new InMemoryTransactionManager());
+
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> running = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                List<Move> moves = new ArrayList<>();
+                for (int i = thread; i < scenario.moves().size(); i += THREADS) {
+                    moves.add(scenario.moves().get(i));
+                }
+                running.add(threads.submit(() -> {
+                    start.await();
+                    for (Move move : moves) {
+                        try {
+                            transactions.executeWithoutResult(status -> service.update(move.id(),
+                                    new SectorView(move.id(), "S" + move.id(), move.parentId() != 0 ? move.parentId() : null)));
+                        } catch (SectorCycleException e) {
+                            // rejected, the tree is unchanged
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        SectorTree snapshot = catalog.current();
+        assertAcyclic(snapshot);
+        assertAcyclic(SectorTree.of(0L, database.values()));
+        assertThat(snapshot.toViews()).containsExactlyInAnyOrderElementsOf(database.values());
+    }
+
+    @Provide
+    Arbitrary<Scenario> scenarios() {
+        return Arbitraries.integers().between(2, 40).flatMap(size -> Combinators.combine(
+                Arbitraries.longs().between(0, Long.MAX_VALUE).list().ofSize(size),
+                Combinators.combine(Arbitraries.longs().between(1, size), Arbitraries.longs().between(0, size))
+                        .as(Move::new).list().ofMinSize(1).ofMaxSize(80)
+        ).as((seeds, moves) -> {
+            List<SectorView> sectors = new ArrayList<>();
+            for (int id = 1; id <= size; id++) {
+                long parent = seeds.get(id - 1) % id;
+                sectors.add(new SectorView((long) id, "S" + id, parent != 0 ? parent : null));
+            }
+            return new Scenario(sectors, moves);
+        }));
+    }
+
+    private static void assertAcyclic(SectorTree tree) {
+        for (SectorView sector : tree.toViews()) {
+            Long current = sector.id();
+            for (int steps = 0; current != null; steps++) {
+                assertThat(steps).as("path up from %s", sector.id()).isLessThanOrEqualTo(tree.size());
+                current = tree.parentIdOf(current);
+            }
+        }
+    }
+
+    /**
+     * Stands in for the change-state row lock, which orders a real database's writes the same
+     * way as their versions.
+     */
+    private static void holdUntilCompletion(ReentrantLock lock) {
+        if (lock.isHeldByCurrentThread()) {
+            return;
+        }
+        lock.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+
+    private static Sector entity(SectorView view) {
+        Sector parent = view.parentId() != null ? new Sector(view.parentId(), "S" + view.parentId(), null) : null;
+        return new Sector(view.id(), view.name(), parent);
+    }
+
+    private static SectorChangeLogRepository changeLog() {
+        AtomicLong version = new AtomicLong(1);
+        return new SectorChangeLogRepository(null) {
+            @Override
+            public State state() {
+                return new State(version.get(), 1);
+            }
+
+            @Override
+            public long appendUpsert(SectorView sector) {
+                return version.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * Commits nothing, but runs transaction synchronizations like a real manager.
+     */
+    private static final class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package com.gatto.sector.service;
 
 import com.gatto.sector.entity.Sector;
+import com.gatto.sector.error.SectorCycleException;
 import com.gatto.sector.error.SectorDoesNotExistException;
+import com.gatto.sector.event.SectorCatalogChangedEvent;
+import com.gatto.sector.event.SectorSubtreeDeletedEvent;
+import com.gatto.sector.repository.SectorChangeLogRepository;
 import com.gatto.sector.repository.SectorRepository;
+import com.gatto.sector.repository.SectorSubtreeRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorBatchView;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorChangesView;
+import com.gatto.sector.view.SectorDeleteView;
+import com.gatto.sector.view.SectorOperationView;
 import com.gatto.sector.view.SectorView;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -11,13 +22,20 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static com.gatto.sector.view.SectorOperationView.Type.CREATE;
+import static com.gatto.sector.view.SectorOperationView.Type.DELETE;
+import static com.gatto.sector.view.SectorOperationView.Type.UPDATE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,22 +44,28 @@ class SectorServiceTest {
     @Mock
     private SectorRepository repository;
 
+    @Mock
+    private SectorCatalog catalog;
+
+    @Mock
+    private SectorChangeLogRepository changeLog;
+
+    @Mock
+    private SectorSubtreeRepository subtreeRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private SectorService service;
 
     @Test
-    @DisplayName("getAllSectors() maps entities to SectorView with all fields including parentId")
-    void getAllSectors_mapsEntitiesToViews() {
-        Sector parent = new Sector();
-        parent.setId(1L);
-        parent.setName("Parent");
-
-        Sector child = new Sector();
-        child.setId(2L);
-        child.setName("Child");
-        child.setParent(parent);
-
-        when(repository.findAll()).thenReturn(List.of(parent, child));
+    @DisplayName("getAllSectors() returns views from the catalog snapshot without touching the repository")
+    void getAllSectors_readsSnapshot() {
+        when(catalog.current()).thenReturn(SectorTree.of(1L, List.of(
+                new SectorView(2L, "Child", 1L),
+                new SectorView(1L, "Parent", null)
+        )));
 
         List<SectorView> views = service.getAllSectors();
 
@@ -56,16 +80,14 @@ class SectorServiceTest {
         assertThat(v2.id()).isEqualTo(2L);
         assertThat(v2.name()).isEqualTo("Child");
         assertThat(v2.parentId()).isEqualTo(1L);
+
+        verifyNoInteractions(repository);
     }
 
     @Test
     @DisplayName("findById() returns SectorView when sector exists")
     void findById_present() {
-        Sector sector = new Sector();
-        sector.setId(10L);
-        sector.setName("IT");
-
-        when(repository.findById(10L)).thenReturn(Optional.of(sector));
+        when(catalog.current()).thenReturn(SectorTree.of(1L, List.of(new SectorView(10L, "IT", null))));
 
         Optional<SectorView> result = service.findById(10L);
 
@@ -74,12 +96,13 @@ class SectorServiceTest {
         assertThat(view.id()).isEqualTo(10L);
         assertThat(view.name()).isEqualTo("IT");
         assertThat(view.parentId()).isNull();
+        verifyNoInteractions(repository);
     }
 
     @Test
     @DisplayName("findById() returns empty Optional when sector doesn't exist")
     void findById_empty() {
-        when(repository.findById(99L)).thenReturn(Optional.empty());
+        when(catalog.current()).thenReturn(SectorTree.of(1L, List.of()));
 
         Optional<SectorView> result = service.findById(99L);
 
@@ -94,9 +117,14 @@ class SectorServiceTest {
 
         when(repository.findById(5L)).thenReturn(Optional.of(sector));
 
+        when(changeLog.appendDelete(5L)).thenReturn(12L);
+
         service.deleteById(5L);
 
         verify(repository).delete(sector);
+        verify(catalog).afterCommit(eq(12L), any());
+        verify(eventPublisher).publishEvent(new SectorCatalogChangedEvent(12L, false,
+                List.of(new SectorChangeView(12L, 5L, null, null, true))));
     }
 
     @Test
@@ -136,6 +164,8 @@ class SectorServiceTest {
         assertThat(result.id()).isEqualTo(7L);
         assertThat(result.name()).isEqualTo("Root");
         assertThat(result.parentId()).isNull();
+        verify(changeLog).appendUpsert(result);
+        verify(catalog).afterCommit(anyLong(), any());
     }
 
     @Test
@@ -149,6 +179,9 @@ class SectorServiceTest {
                 () -> service.create(input));
 
         verify(repository, never()).save(any());
+        verify(changeLog, never()).appendUpsert(any());
+        verify(catalog, never()).afterCommit(anyLong(), any());
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
@@ -228,6 +261,7 @@ class SectorServiceTest {
 
         when(repository.findById(5L)).thenReturn(Optional.of(existing));
         when(repository.save(existing)).thenReturn(saved);
+        when(changeLog.appendUpsert(any())).thenReturn(13L);
 
         SectorView view = new SectorView(5L, "New", null);
 
@@ -239,5 +273,183 @@ class SectorServiceTest {
         assertThat(result.id()).isEqualTo(5L);
         assertThat(result.name()).isEqualTo("New");
         assertThat(result.parentId()).isNull();
+        verify(eventPublisher).publishEvent(new SectorCatalogChangedEvent(13L, false,
+                List.of(new SectorChangeView(13L, 5L, "New", null, false))));
+    }
+
+    @Test
+    @DisplayName("getChanges() returns the logged changes after the client's version")
+    void getChanges_returnsDelta() {
+        List<SectorChangeView> changes = List.of(
+                new SectorChangeView(11L, 7L, "Root", null, false),
+                new SectorChangeView(12L, 5L, null, null, true)
+        );
+        when(changeLog.state()).thenReturn(new SectorChangeLogRepository.State(12L, 3L));
+        when(changeLog.findSince(10L, SectorService.MAX_CHANGES + 1)).thenReturn(changes);
+
+        assertThat(service.getChanges(10L)).isEqualTo(new SectorChangesView(12L, false, changes));
+    }
+
+    @Test
+    @DisplayName("getChanges() asks for a full resync when the version was compacted away")
+    void getChanges_fullResyncWhenCompacted() {
+        when(changeLog.state()).thenReturn(new SectorChangeLogRepository.State(12L, 8L));
+
+        assertThat(service.getChanges(7L)).isEqualTo(new SectorChangesView(12L, true, List.of()));
+        verify(changeLog, never()).findSince(anyLong(), anyInt());
+    }
+
+    @Test
+    @DisplayName("getChanges() does not read the log when the client is up to date")
+    void getChanges_upToDate() {
+        when(changeLog.state()).thenReturn(new SectorChangeLogRepository.State(12L, 8L));
+
+        assertThat(service.getChanges(12L)).isEqualTo(new SectorChangesView(12L, false, List.of()));
+        verify(changeLog, never()).findSince(anyLong(), anyInt());
+    }
+
+    @Test
+    @DisplayName("applyBatch() resolves refs, flushes once and logs the latest state per sector in one append")
+    void applyBatch_createsUpdatesAndDeletes() {
+        Sector food = new Sector(6L, "Food and Beverage", null);
+        Sector beverages = new Sector(43L, "Beverages", food);
+        when(repository.findById(6L)).thenReturn(Optional.of(food));
+        when(repository.findById(43L)).thenReturn(Optional.of(beverages));
+        long[] nextId = {100L};
+        when(repository.save(any(Sector.class))).thenAnswer(invocation -> {
+            Sector sector = invocation.getArgument(0);
+            sector.setId(nextId[0]++);
+            return sector;
+        });
+        when(changeLog.appendAll(any())).thenReturn(20L);
+
+        SectorBatchView result = service.applyBatch(List.of(
+                new SectorOperationView(CREATE, "snacks", null, "Snacks", 6L, null),
+                new SectorOperationView(CREATE, "chips", null, "Chips", null, "snacks"),
+                new SectorOperationView(UPDATE, null, 6L, "Food", null, null),
+                new SectorOperationView(UPDATE, null, 6L, "Food & Drink", null, null),
+                new SectorOperationView(DELETE, null, 43L, null, null, null)
+        ));
+
+        assertThat(result).isEqualTo(new SectorBatchView(20L, Map.of("snacks", 100L, "chips", 101L)));
+        verify(repository).delete(beverages);
+        verify(repository).flush();
+        List<SectorChangeView> logged = List.of(
+                new SectorChangeView(17L, 100L, "Snacks", 6L, false),
+                new SectorChangeView(18L, 101L, "Chips", 100L, false),
+                new SectorChangeView(19L, 6L, "Food & Drink", null, false),
+                new SectorChangeView(20L, 43L, null, null, true)
+        );
+        verify(changeLog).appendAll(logged.stream()
+                .map(c -> new SectorChangeView(0, c.id(), c.name(), c.parentId(), c.deleted()))
+                .toList());
+        verify(catalog).afterCommit(eq(17L), eq(20L), any());
+        verify(eventPublisher).publishEvent(new SectorCatalogChangedEvent(20L, false, logged));
+    }
+
+    @Test
+    @DisplayName("applyBatch() rejects unknown refs and missing sectors before anything is logged")
+    void applyBatch_rejectsInvalidOperations() {
+        when(repository.findById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> service.applyBatch(List.of(
+                new SectorOperationView(CREATE, null, null, "Chips", null, "snacks"))));
+        assertThrows(IllegalArgumentException.class, () -> service.applyBatch(List.of()));
+        assertThrows(SectorDoesNotExistException.class, () -> service.applyBatch(List.of(
+                new SectorOperationView(DELETE, null, 99L, null, null, null))));
+
+        verify(repository, never()).flush();
+        verifyNoInteractions(changeLog, eventPublisher);
+    }
+
+    @Test
+    @DisplayName("update() rejects moving a sector under its own descendant without saving or logging")
+    void update_rejectsCycle() {
+        Sector root = new Sector(1L, "Manufacturing", null);
+        when(repository.findById(1L)).thenReturn(Optional.of(root));
+        when(catalog.lockForMove()).thenReturn(SectorTree.of(3L, List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(6L, "Food and Beverage", 1L),
+                new SectorView(43L, "Beverages", 6L)
+        )));
+
+        assertThrows(SectorCycleException.class,
+                () -> service.update(1L, new SectorView(1L, "Manufacturing", 43L)));
+        assertThrows(SectorCycleException.class,
+                () -> service.update(1L, new SectorView(1L, "Manufacturing", 1L)));
+
+        verify(repository, never()).save(any());
+        verifyNoInteractions(changeLog, eventPublisher);
+    }
+
+    @Test
+    @DisplayName("applyBatch() rejects moves that only form a cycle together")
+    void applyBatch_rejectsCycleAcrossOperations() {
+        when(repository.findById(1L)).thenReturn(Optional.of(new Sector(1L, "Manufacturing", null)));
+        when(repository.findById(2L)).thenReturn(Optional.of(new Sector(2L, "Service", null)));
+        when(catalog.lockForMove()).thenReturn(SectorTree.of(3L, List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(2L, "Service", null)
+        )));
+
+        assertThrows(SectorCycleException.class, () -> service.applyBatch(List.of(
+                new SectorOperationView(UPDATE, null, 1L, "Manufacturing", 2L, null),
+                new SectorOperationView(UPDATE, null, 2L, "Service", 1L, null)
+        )));
+
+        verify(repository, never()).flush();
+        verifyNoInteractions(changeLog, eventPublisher);
+    }
+
+    @Test
+    @DisplayName("deleteSubtree() logs a tombstone per deleted sector in one append and reports the reassigned selections")
+    void deleteSubtree_logsTombstones() {
+        when(subtreeRepository.deleteSubtree(6L, true)).thenReturn(new SectorSubtreeRepository.DeletedSubtree(
+                List.of(6L, 43L), List.of("john"), 1L, 1L));
+        when(changeLog.appendAll(any())).thenReturn(30L);
+
+        SectorDeleteView result = service.deleteSubtree(6L, true);
+
+        assertThat(result).isEqualTo(new SectorDeleteView(30L, List.of(6L, 43L), 1L));
+        verify(changeLog).appendAll(List.of(
+                new SectorChangeView(0, 6L, null, null, true),
+                new SectorChangeView(0, 43L, null, null, true)
+        ));
+        verify(catalog).afterCommit(eq(29L), eq(30L), any());
+        verify(eventPublisher).publishEvent(new SectorCatalogChangedEvent(30L, false, List.of(
+                new SectorChangeView(29L, 6L, null, null, true),
+                new SectorChangeView(30L, 43L, null, null, true)
+        )));
+        verify(eventPublisher).publishEvent(new SectorSubtreeDeletedEvent(List.of(6L, 43L), List.of("john"), 1L, 1L));
+    }
+
+    @Test
+    @DisplayName("deleteSubtree() throws SectorDoesNotExistException when nothing was deleted")
+    void deleteSubtree_notFound() {
+        when(subtreeRepository.deleteSubtree(99L, false)).thenReturn(new SectorSubtreeRepository.DeletedSubtree(
+                List.of(), List.of(), null, 0L));
+
+        assertThrows(SectorDoesNotExistException.class, () -> service.deleteSubtree(99L, false));
+
+        verifyNoInteractions(changeLog, eventPublisher);
+    }
+
+    @Test
+    @DisplayName("move() re-parents in one statement after the in-memory cycle check")
+    void move_reparents() {
+        when(catalog.lockForMove()).thenReturn(SectorTree.of(3L, List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(2L, "Service", null),
+                new SectorView(6L, "Food and Beverage", 1L)
+        )));
+        when(subtreeRepository.move(6L, 2L)).thenReturn(true);
+        when(changeLog.appendUpsert(any())).thenReturn(31L);
+
+        assertThat(service.move(6L, 2L)).isEqualTo(new SectorView(6L, "Food and Beverage", 2L));
+        assertThrows(SectorCycleException.class, () -> service.move(1L, 6L));
+
+        verify(subtreeRepository, never()).move(1L, 6L);
+        verify(catalog).afterCommit(eq(31L), any());
+        verify(repository, never()).save(any());
     }
 }
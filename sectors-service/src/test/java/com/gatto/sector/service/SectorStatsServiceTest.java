@@ -0,0 +1,101 @@
+package com.gatto.sector.service;
+
+import com.gatto.sector.event.SectorSubtreeDeletedEvent;
+import com.gatto.sector.event.UserSelectionChangedEvent;
+import com.gatto.sector.repository.SectorSelectionCount;
+import com.gatto.sector.repository.UserSectorSelectionRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorStatsView;
+import com.gatto.sector.view.SectorView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SectorStatsServiceTest {
+
+    @Mock
+    private UserSectorSelectionRepository userSelectionRepo;
+
+    @Mock
+    private SectorCatalog catalog;
+
+    @InjectMocks
+    private SectorStatsService service;
+
+    @BeforeEach
+    void setUp() {
+        when(catalog.current()).thenReturn(SectorTree.of(1L, List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(6L, "Food and Beverage", 1L),
+                new SectorView(43L, "Beverages", 6L),
+                new SectorView(2L, "Service", null)
+        )));
+        when(userSelectionRepo.countSelectionsBySector()).thenReturn(List.of(count(6L, 2L), count(43L, 1L)));
+        service.afterSingletonsInstantiated();
+    }
+
+    @Test
+    @DisplayName("getStats() rolls loaded counts up every subtree")
+    void getStats_rollsUp() {
+        assertThat(service.getStats()).containsExactly(
+                new SectorStatsView(1L, 0L, 3L),
+                new SectorStatsView(2L, 0L, 0L),
+                new SectorStatsView(6L, 2L, 3L),
+                new SectorStatsView(43L, 1L, 1L)
+        );
+    }
+
+    @Test
+    @DisplayName("onSelectionChanged() applies the saved difference without querying again")
+    void onSelectionChanged_appliesDelta() {
+        service.onSelectionChanged(new UserSelectionChangedEvent(7, "john", List.of(2L, 43L), List.of(2L, 43L), List.of(6L)));
+
+        assertThat(service.getStats()).containsExactly(
+                new SectorStatsView(1L, 0L, 3L),
+                new SectorStatsView(2L, 1L, 1L),
+                new SectorStatsView(6L, 1L, 3L),
+                new SectorStatsView(43L, 2L, 2L)
+        );
+        verify(userSelectionRepo, times(1)).countSelectionsBySector();
+    }
+
+    @Test
+    @DisplayName("onSubtreeDeleted() drops the branch's counts and adds the reassigned ones to its parent")
+    void onSubtreeDeleted_movesCountsToParent() {
+        when(catalog.current()).thenReturn(SectorTree.of(2L, List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(2L, "Service", null)
+        )));
+
+        service.onSubtreeDeleted(new SectorSubtreeDeletedEvent(List.of(6L, 43L), List.of("john", "mary"), 1L, 2L));
+
+        assertThat(service.getStats()).containsExactly(
+                new SectorStatsView(1L, 2L, 2L),
+                new SectorStatsView(2L, 0L, 0L)
+        );
+    }
+
+    private static SectorSelectionCount count(Long sectorId, long selections) {
+        return new SectorSelectionCount() {
+            @Override
+            public Long getSectorId() {
+                return sectorId;
+            }
+
+            @Override
+            public long getSelections() {
+                return selections;
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.gatto.sector.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserSelectionFlusherTest {
+
+    @Mock
+    private UserSelectionService userSelectionService;
+
+    @Test
+    @DisplayName("flush() backs off while the database is unavailable, up to max-backoff")
+    void flush_backsOff() {
+        when(userSelectionService.flushPending()).thenReturn(false, false, false, false, true);
+
+        UserSelectionFlusher flusher = flusher(Duration.ofSeconds(1), Duration.ofSeconds(5));
+
+        assertThat(flusher.flush()).isEqualTo(Duration.ofSeconds(2));
+        assertThat(flusher.flush()).isEqualTo(Duration.ofSeconds(4));
+        assertThat(flusher.flush()).isEqualTo(Duration.ofSeconds(5));
+        assertThat(flusher.flush()).isEqualTo(Duration.ofSeconds(5));
+        assertThat(flusher.flush()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    @DisplayName("close() does not flush when write-behind is off")
+    void close_disabled() throws InterruptedException {
+        flusher(Duration.ofSeconds(1), Duration.ofSeconds(5)).close();
+
+        verifyNoInteractions(userSelectionService);
+    }
+
+    private UserSelectionFlusher flusher(Duration interval, Duration maxBackoff) {
+        return new UserSelectionFlusher(userSelectionService,
+                new UserSelectionWriteBuffer(false, 100, 50, new SimpleMeterRegistry()), interval, maxBackoff);
+    }
+}
@@ -1,25 +1,46 @@
 package com.gatto.sector.service;
 
-import com.gatto.sector.entity.Sector;
-import com.gatto.sector.entity.UserSectorSelection;
 import com.gatto.sector.error.SectorDoesNotExistException;
+import com.gatto.sector.error.StaleSelectionException;
+import com.gatto.sector.event.UserSelectionChangedEvent;
+import com.gatto.sector.repository.AppUserRepository;
 import com.gatto.sector.repository.SectorRepository;
 import com.gatto.sector.repository.UserSectorSelectionRepository;
+import com.gatto.sector.tree.SectorTree;
+import com.gatto.sector.view.SectorView;
 import com.gatto.sector.view.UserSelectionView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,9 +49,27 @@ class UserSelectionViewServiceTest {
     @Mock
     private UserSectorSelectionRepository selectionRepo;
 
+    @Mock
+    private AppUserRepository appUserRepo;
+
     @Mock
     private SectorRepository sectorRepo;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private UserSelectionCache selectionCache = new UserSelectionCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+    @Spy
+    private UserSelectionWriteBuffer writeBuffer = new UserSelectionWriteBuffer(false, 100, 50, new SimpleMeterRegistry());
+
+    @Mock
+    private SectorCatalog catalog;
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private UserSelectionService service;
 
@@ -39,70 +78,128 @@ class UserSelectionViewServiceTest {
         String username = "john";
         List<Long> sectorIds = List.of(1L, 2L);
 
-        Sector s1 = new Sector();
-        s1.setId(1L);
-        Sector s2 = new Sector();
-        s2.setId(2L);
-
-        when(sectorRepo.findById(1L)).thenReturn(Optional.of(s1));
-        when(sectorRepo.findById(2L)).thenReturn(Optional.of(s2));
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L, 2L));
+        when(appUserRepo.idFor(username)).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of());
 
         UserSelectionView input = new UserSelectionView(username, sectorIds);
 
-        UserSectorSelection row1 = new UserSectorSelection();
-        row1.setUsername(username);
-        row1.setSector(s1);
+        // when
+        UserSelectionView result = service.saveSelection(input);
 
-        UserSectorSelection row2 = new UserSectorSelection();
-        row2.setUsername(username);
-        row2.setSector(s2);
+        verify(selectionRepo).insertAll(7, sectorIds);
+        verify(selectionRepo, never()).deleteByUserIdAndSectorIdIn(any(), any());
+        verify(selectionRepo, never()).save(any());
 
-        when(selectionRepo.findByUsername(username))
-                .thenReturn(List.of(row1, row2));
+        assertEquals(username, result.username());
+        assertEquals(sectorIds, result.sectorIds());
+    }
 
-        // when
-        UserSelectionView result = service.saveSelection(input);
+    @Test
+    @DisplayName("saveProfile: writes only the difference against the stored selection")
+    void saveProfile_appliesDiff() {
+        String username = "john";
 
-        verify(selectionRepo).deleteByUsername(username);
+        when(sectorRepo.findExistingIds(Set.of(2L, 3L))).thenReturn(List.of(2L, 3L));
+        when(appUserRepo.idFor(username)).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of(1L, 2L));
 
-        ArgumentCaptor<UserSectorSelection> captor =
-                ArgumentCaptor.forClass(UserSectorSelection.class);
-        verify(selectionRepo, times(2)).save(captor.capture());
+        UserSelectionView result = service.saveSelection(new UserSelectionView(username, List.of(2L, 3L, 3L)));
 
-        List<UserSectorSelection> savedSelections = captor.getAllValues();
-        assertEquals(2, savedSelections.size());
+        verify(selectionRepo).deleteByUserIdAndSectorIdIn(7, List.of(1L));
+        verify(selectionRepo).insertAll(7, List.of(3L));
+        verify(eventPublisher).publishEvent(new UserSelectionChangedEvent(7, username, List.of(2L, 3L), List.of(3L), List.of(1L)));
+        assertEquals(List.of(2L, 3L), result.sectorIds());
+    }
 
-        assertEquals(username, savedSelections.get(0).getUsername());
-        assertEquals(username, savedSelections.get(1).getUsername());
+    @Test
+    @DisplayName("saveProfile: does not write anything when the selection is unchanged")
+    void saveProfile_unchanged() {
+        String username = "john";
 
-        List<Long> savedSectorIds = savedSelections.stream()
-                .map(sel -> sel.getSector().getId())
-                .toList();
-        assertTrue(savedSectorIds.containsAll(sectorIds));
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L, 2L));
+        when(appUserRepo.idFor(username)).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of(2L, 1L));
 
-        assertEquals(username, result.username());
-        assertEquals(sectorIds, result.sectorIds());
+        service.saveSelection(new UserSelectionView(username, List.of(1L, 2L)));
+
+        verify(selectionRepo, never()).deleteByUserIdAndSectorIdIn(any(), any());
+        verify(selectionRepo, never()).insertAll(anyInt(), any());
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
-    @DisplayName("saveProfile: throws IllegalArgumentException if some sectors are not found")
+    @DisplayName("saveProfile: throws SectorDoesNotExistException if some sectors are not found")
     void saveProfile_throwsWhenSomeSectorsMissing() {
         String username = "john";
         List<Long> sectorIds = List.of(1L, 2L);
 
         // only one sector found instead of two
-        Sector s1 = new Sector();
-        s1.setId(1L);
-        when(sectorRepo.findById(1L)).thenReturn(Optional.of(s1));
-        when(sectorRepo.findById(2L)).thenReturn(Optional.empty());
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L));
 
         UserSelectionView input = new UserSelectionView(username, sectorIds);
 
         assertThrows(SectorDoesNotExistException.class,
                 () -> service.saveSelection(input));
 
-        // save called only once for the first sector
-        verify(selectionRepo).save(any());
+        // nothing is written when validation fails
+        verify(selectionRepo, never()).insertAll(anyInt(), any());
+        verifyNoInteractions(appUserRepo);
+    }
+
+    @Test
+    @DisplayName("saveProfile: a submission equal to a stale cached selection is still written")
+    void saveProfile_staleCache() {
+        // cached before another instance saved [3]
+        selectionCache.putIfAbsent("john", new long[]{1L, 2L});
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L, 2L));
+        when(appUserRepo.idFor("john")).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of(3L));
+
+        UserSelectionView result = service.saveSelection(new UserSelectionView("john", List.of(2L, 1L)),
+                List.of(UserSelectionService.versionOf(List.of(3L))));
+
+        assertEquals(List.of(2L, 1L), result.sectorIds());
+        verify(selectionRepo).deleteByUserIdAndSectorIdIn(7, List.of(3L));
+        verify(selectionRepo).insertAll(7, List.of(2L, 1L));
+    }
+
+    @Test
+    @DisplayName("saveProfile: rejects a save made against an older version")
+    void saveProfile_staleVersion() {
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L, 2L));
+        when(appUserRepo.idFor("john")).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of(1L));
+
+        assertThrows(StaleSelectionException.class, () -> service.saveSelection(
+                new UserSelectionView("john", List.of(1L, 2L)), List.of(UserSelectionService.versionOf(List.of(2L)))));
+
+        verify(selectionRepo, never()).insertAll(anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("saveProfile: checks the version again under the user's lock")
+    void saveProfile_versionCheckedUnderLock() {
+        String version = UserSelectionService.versionOf(List.of(1L));
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L, 2L));
+        when(appUserRepo.idFor("john")).thenReturn(7);
+        // another save committed between the read and the lock
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of(3L));
+
+        assertThrows(StaleSelectionException.class,
+                () -> service.saveSelection(new UserSelectionView("john", List.of(1L, 2L)), List.of(version)));
+        verify(selectionRepo, never()).insertAll(anyInt(), any());
+
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of(1L));
+        service.saveSelection(new UserSelectionView("john", List.of(1L, 2L)), List.of(version));
+        verify(selectionRepo).insertAll(7, List.of(2L));
+    }
+
+    @Test
+    @DisplayName("versionOf: ignores order and duplicates")
+    void versionOf_isOrderIndependent() {
+        assertEquals(UserSelectionService.versionOf(List.of(1L, 2L, 3L)), UserSelectionService.versionOf(List.of(3L, 1L, 2L, 1L)));
+        assertNotEquals(UserSelectionService.versionOf(List.of(1L, 2L)), UserSelectionService.versionOf(List.of(1L, 3L)));
     }
 
     @Test
@@ -110,26 +207,43 @@ class UserSelectionViewServiceTest {
     void getProfile_returnsProfile() {
         String username = "alice";
 
-        Sector s1 = new Sector();
-        s1.setId(10L);
-        Sector s2 = new Sector();
-        s2.setId(20L);
+        when(selectionRepo.findSectorIdsByUsername(username))
+                .thenReturn(List.of(10L, 20L));
 
-        UserSectorSelection sel1 = new UserSectorSelection();
-        sel1.setUsername(username);
-        sel1.setSector(s1);
+        UserSelectionView result = service.getSelection(username);
 
-        UserSectorSelection sel2 = new UserSectorSelection();
-        sel2.setUsername(username);
-        sel2.setSector(s2);
+        assertEquals(username, result.username());
+        assertEquals(List.of(10L, 20L), result.sectorIds());
+    }
+
+    @Test
+    @DisplayName("getProfile: serves a returning user from the cache")
+    void getProfile_cachesSelection() {
+        String username = "alice";
 
-        when(selectionRepo.findByUsername(username))
-                .thenReturn(List.of(sel1, sel2));
+        when(selectionRepo.findSectorIdsByUsername(username))
+                .thenReturn(List.of(10L, 20L));
 
+        service.getSelection(username);
         UserSelectionView result = service.getSelection(username);
 
-        assertEquals(username, result.username());
         assertEquals(List.of(10L, 20L), result.sectorIds());
+        verify(selectionRepo, times(1)).findSectorIdsByUsername(username);
+    }
+
+    @Test
+    @DisplayName("getProfile: returns the committed selection instead of the cached one")
+    void getProfile_afterCommittedSave() {
+        String username = "alice";
+
+        when(selectionRepo.findSectorIdsByUsername(username))
+                .thenReturn(List.of(10L, 20L));
+        service.getSelection(username);
+
+        selectionCache.onSelectionChanged(new UserSelectionChangedEvent(7, username, List.of(20L, 30L), List.of(30L), List.of(10L)));
+
+        assertEquals(List.of(20L, 30L), service.getSelection(username).sectorIds());
+        verify(selectionRepo, times(1)).findSectorIdsByUsername(username);
     }
 
     @Test
@@ -137,10 +251,215 @@ class UserSelectionViewServiceTest {
     void getProfile_throwsWhenNoSelections() {
         String username = "nobody";
 
-        when(selectionRepo.findByUsername(username))
+        when(selectionRepo.findSectorIdsByUsername(username))
                 .thenReturn(List.of());
 
         assertThrows(EntityNotFoundException.class,
                 () -> service.getSelection(username));
     }
+
+    @Test
+    @DisplayName("write-behind: acknowledges without writing and flushes only the last save")
+    void writeBehind_coalescesSaves() {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L, 2L));
+        when(appUserRepo.idFor("john")).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of());
+
+        writeBehind.saveSelection(new UserSelectionView("john", List.of(1L)));
+        UserSelectionView result = writeBehind.saveSelection(new UserSelectionView("john", List.of(2L, 1L)));
+
+        assertEquals(List.of(2L, 1L), result.sectorIds());
+        assertEquals(List.of(2L, 1L), writeBehind.getSelection("john").sectorIds());
+        verify(selectionRepo, never()).insertAll(anyInt(), any());
+        verifyNoInteractions(appUserRepo, sectorRepo);
+
+        writeBehind.flushPending();
+
+        verify(appUserRepo, times(1)).idFor("john");
+        verify(selectionRepo).insertAll(7, List.of(2L, 1L));
+        verify(eventPublisher).publishEvent(new UserSelectionChangedEvent(7, "john", List.of(2L, 1L), List.of(2L, 1L), List.of()));
+    }
+
+    @Test
+    @DisplayName("write-behind: resubmitting the pending selection is answered from the buffer")
+    void writeBehind_identicalToPending() {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        writeBehind.saveSelection(new UserSelectionView("john", List.of(1L, 2L)));
+
+        UserSelectionView result = writeBehind.saveSelection(new UserSelectionView("john", List.of(2L, 1L)),
+                List.of(UserSelectionService.versionOf(List.of(1L, 2L))));
+
+        assertEquals(List.of(2L, 1L), result.sectorIds());
+        assertEquals(List.of(1L, 2L), writeBehind.getSelection("john").sectorIds());
+        verifyNoInteractions(appUserRepo, sectorRepo, selectionRepo);
+    }
+
+    @Test
+    @DisplayName("write-behind: rejects sectors that exist neither in the catalog nor in the database")
+    void writeBehind_validatesBeforeAcknowledging() {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        when(sectorRepo.findExistingIds(List.of(99L))).thenReturn(List.of());
+
+        assertThrows(SectorDoesNotExistException.class,
+                () -> writeBehind.saveSelection(new UserSelectionView("john", List.of(1L, 99L))));
+
+        writeBehind.flushPending();
+        verify(selectionRepo, never()).insertAll(anyInt(), any());
+        verifyNoInteractions(appUserRepo);
+    }
+
+    @Test
+    @DisplayName("write-behind: a sector deleted before the flush drops out of the selection")
+    void writeBehind_dropsDeletedSectors() {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L));
+        when(appUserRepo.idFor("john")).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of());
+
+        writeBehind.saveSelection(new UserSelectionView("john", List.of(1L, 2L)));
+        writeBehind.flushPending();
+
+        verify(selectionRepo).insertAll(7, List.of(1L));
+    }
+
+    @Test
+    @DisplayName("write-behind: writes through when the buffer is full")
+    void writeBehind_writesThroughWhenFull() {
+        UserSelectionService writeBehind = writeBehindService(1, 50);
+        when(sectorRepo.findExistingIds(Set.of(2L))).thenReturn(List.of(2L));
+        when(appUserRepo.idFor("ann")).thenReturn(8);
+        when(selectionRepo.findSectorIdsByUserId(8)).thenReturn(List.of());
+
+        writeBehind.saveSelection(new UserSelectionView("john", List.of(1L)));
+        writeBehind.saveSelection(new UserSelectionView("ann", List.of(2L)));
+
+        verify(selectionRepo).insertAll(8, List.of(2L));
+        verify(appUserRepo, never()).idFor("john");
+    }
+
+    @Test
+    @DisplayName("write-behind: of two concurrent If-Match saves against the same pending version, one wins")
+    void writeBehind_ifMatchIsAtomic() throws Exception {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        writeBehind.saveSelection(new UserSelectionView("john", List.of(1L)));
+        List<String> pendingVersion = List.of(UserSelectionService.versionOf(List.of(1L)));
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<UserSelectionView>> saves = new ArrayList<>();
+        try {
+            for (List<Long> sectorIds : List.of(List.of(2L), List.of(1L, 2L))) {
+                saves.add(pool.submit(() -> {
+                    start.await();
+                    return writeBehind.saveSelection(new UserSelectionView("john", sectorIds), pendingVersion);
+                }));
+            }
+            start.countDown();
+
+            List<UserSelectionView> saved = new ArrayList<>();
+            int stale = 0;
+            for (Future<UserSelectionView> save : saves) {
+                try {
+                    saved.add(save.get(5, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertInstanceOf(StaleSelectionException.class, e.getCause());
+                    stale++;
+                }
+            }
+
+            assertEquals(1, saved.size());
+            assertEquals(1, stale);
+            assertEquals(saved.get(0).sectorIds(), writeBehind.getSelection("john").sectorIds());
+        } finally {
+            pool.shutdownNow();
+        }
+        verifyNoInteractions(appUserRepo);
+    }
+
+    @Test
+    @DisplayName("write-behind: an If-Match save with nothing pending is written through, checked under the row lock")
+    void writeBehind_ifMatchWithNothingPendingWritesThrough() {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        when(sectorRepo.findExistingIds(Set.of(2L))).thenReturn(List.of(2L));
+        when(appUserRepo.idFor("john")).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of(1L));
+
+        writeBehind.saveSelection(new UserSelectionView("john", List.of(2L)),
+                List.of(UserSelectionService.versionOf(List.of(1L))));
+
+        verify(selectionRepo).insertAll(7, List.of(2L));
+        verify(selectionRepo).deleteByUserIdAndSectorIdIn(7, List.of(1L));
+        assertTrue(writeBehind.flushPending());
+        verify(appUserRepo, times(1)).idFor("john");
+    }
+
+    @Test
+    @DisplayName("write-behind: a rejected batch is retried per user and only a selection rejected again is dropped")
+    void writeBehind_retriesRejectedBatchPerUser() {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        when(sectorRepo.findExistingIds(anyCollection())).thenReturn(List.of(1L));
+        when(appUserRepo.idFor("john")).thenReturn(7);
+        when(appUserRepo.idFor("bad")).thenThrow(new DataIntegrityViolationException("too long"));
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of());
+
+        for (String username : List.of("john", "bad")) {
+            writeBehind.saveSelection(new UserSelectionView(username, List.of(1L)));
+        }
+
+        assertTrue(writeBehind.flushPending());
+        verify(selectionRepo, atLeastOnce()).insertAll(eq(7), eq(List.of(1L)));
+        assertThrows(EntityNotFoundException.class, () -> writeBehind.getSelection("bad"));
+        assertThrows(EntityNotFoundException.class, () -> writeBehind.getSelection("john"));
+    }
+
+    @Test
+    @DisplayName("write-behind: while the database is unavailable everything stays pending, without per-user retries")
+    void writeBehind_keepsBatchPendingWhileDatabaseUnavailable() {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        when(sectorRepo.findExistingIds(anyCollection()))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"))
+                .thenThrow(new QueryTimeoutException("slow"))
+                .thenReturn(List.of(1L));
+        when(appUserRepo.idFor(any())).thenReturn(7, 8);
+
+        for (String username : List.of("john", "ann")) {
+            writeBehind.saveSelection(new UserSelectionView(username, List.of(1L)));
+        }
+
+        assertFalse(writeBehind.flushPending());
+        assertFalse(writeBehind.flushPending());
+        verify(sectorRepo, times(2)).findExistingIds(anyCollection());
+        verifyNoInteractions(appUserRepo);
+        assertEquals(List.of(1L), writeBehind.getSelection("john").sectorIds());
+        assertEquals(List.of(1L), writeBehind.getSelection("ann").sectorIds());
+
+        assertTrue(writeBehind.flushPending());
+        verify(selectionRepo, times(2)).insertAll(anyInt(), eq(List.of(1L)));
+    }
+
+    @Test
+    @DisplayName("write-behind: a sector deleted between lookup and insert drops out instead of failing the save")
+    void writeBehind_revalidatesRejectedSelection() {
+        UserSelectionService writeBehind = writeBehindService(100, 50);
+        when(sectorRepo.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L, 2L), List.of(1L));
+        when(appUserRepo.idFor("john")).thenReturn(7);
+        when(selectionRepo.findSectorIdsByUserId(7)).thenReturn(List.of());
+        doThrow(new DataIntegrityViolationException("violates foreign key constraint"))
+                .when(selectionRepo).insertAll(7, List.of(1L, 2L));
+
+        writeBehind.saveSelection(new UserSelectionView("john", List.of(1L, 2L)));
+
+        assertTrue(writeBehind.flushPending());
+        verify(selectionRepo).insertAll(7, List.of(1L));
+    }
+
+    private UserSelectionService writeBehindService(int maxPending, int batchSize) {
+        lenient().when(catalog.current()).thenReturn(SectorTree.of(1L, List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(2L, "Service", null))));
+        return new UserSelectionService(selectionRepo, appUserRepo, sectorRepo, eventPublisher, selectionCache,
+                new UserSelectionWriteBuffer(true, maxPending, batchSize, new SimpleMeterRegistry()),
+                catalog, transactionTemplate);
+    }
 }
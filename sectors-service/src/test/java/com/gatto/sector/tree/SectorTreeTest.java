@@ -0,0 +1,205 @@
+package com.gatto.sector.tree;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gatto.sector.view.SectorChangeView;
+import com.gatto.sector.view.SectorView;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SectorTreeTest {
+
+    private final SectorTree tree = SectorTree.of(5L, List.of(
+            new SectorView(6L, "Food and Beverage", 1L),
+            new SectorView(1L, "Manufacturing", null),
+            new SectorView(43L, "Beverages", 6L),
+            new SectorView(2L, "Service", null)
+    ));
+
+    @Test
+    @DisplayName("of() keeps all sectors ordered by id with their parents")
+    void of_buildsSnapshot() {
+        assertThat(tree.version()).isEqualTo(5L);
+        assertThat(tree.size()).isEqualTo(4);
+        assertThat(tree.toViews()).containsExactly(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(2L, "Service", null),
+                new SectorView(6L, "Food and Beverage", 1L),
+                new SectorView(43L, "Beverages", 6L)
+        );
+    }
+
+    @Test
+    @DisplayName("of() rejects duplicate ids")
+    void of_rejectsDuplicates() {
+        assertThrows(IllegalArgumentException.class, () -> SectorTree.of(1L, List.of(
+                new SectorView(1L, "A", null),
+                new SectorView(1L, "B", null)
+        )));
+    }
+
+    @Test
+    @DisplayName("find() returns the sector when present and empty otherwise")
+    void find() {
+        assertThat(tree.find(43L)).contains(new SectorView(43L, "Beverages", 6L));
+        assertThat(tree.find(99L)).isEmpty();
+        assertThat(tree.contains(2L)).isTrue();
+        assertThat(tree.contains(3L)).isFalse();
+    }
+
+    @Test
+    @DisplayName("with() inserts or replaces a sector in a new snapshot with the next version")
+    void with_upserts() {
+        SectorTree inserted = tree.with(new SectorView(3L, "Other", null));
+        SectorTree replaced = inserted.with(new SectorView(43L, "Drinks", 2L));
+
+        assertThat(inserted.version()).isEqualTo(6L);
+        assertThat(inserted.find(3L)).contains(new SectorView(3L, "Other", null));
+        assertThat(replaced.version()).isEqualTo(7L);
+        assertThat(replaced.size()).isEqualTo(5);
+        assertThat(replaced.find(43L)).contains(new SectorView(43L, "Drinks", 2L));
+
+        assertThat(tree.size()).isEqualTo(4);
+        assertThat(tree.find(43L)).contains(new SectorView(43L, "Beverages", 6L));
+    }
+
+    @Test
+    @DisplayName("without() removes a sector and leaves the original snapshot untouched")
+    void without_removes() {
+        SectorTree removed = tree.without(43L);
+
+        assertThat(removed.version()).isEqualTo(6L);
+        assertThat(removed.contains(43L)).isFalse();
+        assertThat(tree.contains(43L)).isTrue();
+        assertThat(tree.without(99L)).isSameAs(tree);
+    }
+
+    @Test
+    @DisplayName("withChanges() applies upserts and tombstones in order as one new version")
+    void withChanges_appliesInOrder() {
+        SectorTree changed = tree.withChanges(List.of(
+                new SectorChangeView(6L, 100L, "Snacks", 6L, false),
+                new SectorChangeView(7L, 43L, null, null, true),
+                new SectorChangeView(8L, 100L, "Savoury snacks", 6L, false)
+        ));
+
+        assertThat(changed.version()).isEqualTo(6L);
+        assertThat(changed.contains(43L)).isFalse();
+        assertThat(changed.descendants(6L)).containsExactly(new SectorView(100L, "Savoury snacks", 6L));
+        assertThat(tree.contains(43L)).isTrue();
+    }
+
+    @Test
+    @DisplayName("descendants() returns the whole subtree in pre-order")
+    void descendants_preorder() {
+        SectorTree deep = tree
+                .with(new SectorView(342L, "Bakery & confectionery products", 6L))
+                .with(new SectorView(19L, "Construction materials", 1L));
+
+        assertThat(deep.descendants(1L)).extracting(SectorView::id).containsExactly(6L, 43L, 342L, 19L);
+        assertThat(deep.descendants(6L)).extracting(SectorView::id).containsExactly(43L, 342L);
+        assertThat(deep.descendants(43L)).isEmpty();
+        assertThat(deep.descendants(99L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("ancestors() returns the path from the root down to the direct parent")
+    void ancestors_rootFirst() {
+        assertThat(tree.ancestors(43L)).extracting(SectorView::id).containsExactly(1L, 6L);
+        assertThat(tree.ancestors(1L)).isEmpty();
+        assertThat(tree.ancestors(99L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("isDescendant() answers subtree membership by interval check")
+    void isDescendant() {
+        assertThat(tree.isDescendant(43L, 1L)).isTrue();
+        assertThat(tree.isDescendant(43L, 6L)).isTrue();
+        assertThat(tree.isDescendant(6L, 43L)).isFalse();
+        assertThat(tree.isDescendant(1L, 1L)).isFalse();
+        assertThat(tree.isDescendant(43L, 2L)).isFalse();
+    }
+
+    @Test
+    @DisplayName("isAtOrAbove() walks up through pending moves before the snapshot's parents")
+    void isAtOrAbove_followsPendingMoves() {
+        assertThat(tree.parentIdOf(43L)).isEqualTo(6L);
+        assertThat(tree.parentIdOf(1L)).isNull();
+
+        assertThat(tree.isAtOrAbove(1L, 43L, Map.of())).isTrue();
+        assertThat(tree.isAtOrAbove(43L, 43L, Map.of())).isTrue();
+        assertThat(tree.isAtOrAbove(2L, 43L, Map.of())).isFalse();
+        // 1 moved under 2 in the same batch: 2 is now above 43 as well
+        assertThat(tree.isAtOrAbove(2L, 43L, Map.of(1L, 2L))).isTrue();
+    }
+
+    @Test
+    @DisplayName("re-parenting a node moves its whole subtree")
+    void with_reparentMovesSubtree() {
+        SectorTree moved = tree.with(new SectorView(6L, "Food and Beverage", 2L));
+
+        assertThat(moved.isDescendant(43L, 2L)).isTrue();
+        assertThat(moved.isDescendant(43L, 1L)).isFalse();
+        assertThat(moved.descendants(1L)).isEmpty();
+        assertThat(moved.ancestors(43L)).extracting(SectorView::id).containsExactly(2L, 6L);
+    }
+
+    @Test
+    @DisplayName("serialises to the same JSON array as a list of SectorView")
+    void serialisesLikeViews() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        assertThat(mapper.writeValueAsString(tree)).isEqualTo(mapper.writeValueAsString(tree.toViews()));
+        assertThat(mapper.writeValueAsString(SectorTree.of(1L, List.of()))).isEqualTo("[]");
+    }
+
+    @Test
+    @DisplayName("subtreeSums() folds values of every subtree into its root")
+    void subtreeSums() {
+        long[] sums = tree.subtreeSums(id -> id == 43L ? 4L : id == 6L ? 2L : 1L);
+
+        // id order: 1, 2, 6, 43
+        assertThat(sums).containsExactly(7L, 1L, 6L, 4L);
+    }
+
+    @Test
+    @DisplayName("search() matches substrings ignoring case and accents, best matches first")
+    void search_ranksMatches() {
+        SectorTree catalog = SectorTree.of(1L, List.of(
+                new SectorView(1L, "Manufacturing", null),
+                new SectorView(2L, "Électronique et Optique", 1L),
+                new SectorView(3L, "Telecommunications", 1L),
+                new SectorView(4L, "Electronics", 1L),
+                new SectorView(5L, "Consumer electronics", 1L)
+        ));
+
+        assertThat(catalog.search("ELECTRON", 10)).extracting(SectorView::id).containsExactly(4L, 2L, 5L);
+        assertThat(catalog.search("optiq", 10)).extracting(SectorView::id).containsExactly(2L);
+        assertThat(catalog.search("co", 10)).extracting(SectorView::id).containsExactly(5L, 3L);
+        assertThat(catalog.search("ectronics", 1)).extracting(SectorView::id).containsExactly(4L);
+        // every trigram of "acturing" is in "Manufacturing", but not of "turingac"
+        assertThat(catalog.search("turingac", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("search() sees later snapshots' renames, additions and removals")
+    void search_followsChanges() {
+        assertThat(tree.search("bever", 10)).extracting(SectorView::id).containsExactly(43L, 6L);
+
+        SectorTree changed = tree
+                .with(new SectorView(43L, "Drinks", 6L))
+                .withAll(List.of(new SectorView(44L, "Beverage packaging", 1L)))
+                .withChanges(List.of(new SectorChangeView(9L, 2L, "Beverage services", null, false)))
+                .without(6L)
+                .atVersion(20L);
+
+        assertThat(changed.search("bever", 10)).extracting(SectorView::id).containsExactly(2L, 44L);
+        assertThat(changed.search("drink", 10)).extracting(SectorView::id).containsExactly(43L);
+        assertThat(changed.search("food", 10)).isEmpty();
+    }
+}
@@ -9,7 +9,26 @@ export interface SectorView extends Sector {
   displayName: string;
 }
 
+export interface SectorSearchHit extends Sector {
+  // ancestors from the root down to the direct parent
+  path: Sector[];
+}
+
 export interface SaveSectorRequest {
   name: string;
   parentId?: number | null;
 }
+
+export interface SectorChange {
+  version: number;
+  id: number;
+  name: string | null;
+  parentId: number | null;
+  deleted: boolean;
+}
+
+export interface SectorChanges {
+  version: number;
+  fullResync: boolean;
+  changes: SectorChange[];
+}
@@ -1,7 +1,7 @@
-import { Injectable } from '@angular/core';
+import { Injectable, NgZone } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
 import { Observable } from 'rxjs';
-import { Sector, SaveSectorRequest } from '../models/sector.model';
+import { Sector, SaveSectorRequest, SectorChanges, SectorSearchHit } from '../models/sector.model';
 
 @Injectable({
   providedIn: 'root'
@@ -9,7 +9,7 @@ import { Sector, SaveSectorRequest } from '../models/sector.model';
 export class ApiService {
   private readonly baseUrl = 'http://localhost:8085/api';
 
-  constructor(private http: HttpClient) {}
+  constructor(private http: HttpClient, private zone: NgZone) {}
 
   // ---------- SECTORS ADMIN ----------
 
@@ -17,6 +17,10 @@ export class ApiService {
     return this.http.get<Sector[]>(`${this.baseUrl}/sectors`);
   }
 
+  searchSectors(q: string, limit = 10): Observable<SectorSearchHit[]> {
+    return this.http.get<SectorSearchHit[]>(`${this.baseUrl}/sectors/search`, { params: { q, limit } });
+  }
+
   createSector(payload: SaveSectorRequest): Observable<Sector> {
     return this.http.post<Sector>(`${this.baseUrl}/sectors`, payload);
   }
@@ -29,15 +33,32 @@ export class ApiService {
     return this.http.delete<void>(`${this.baseUrl}/sectors/${id}`);
   }
 
+  // EventSource reconnects on its own and resumes from the last event id
+  sectorChanges(): Observable<SectorChanges> {
+    return new Observable<SectorChanges>((subscriber) => {
+      const source = new EventSource(`${this.baseUrl}/sectors/events`);
+      const emit = (event: MessageEvent) =>
+        this.zone.run(() => subscriber.next(JSON.parse(event.data)));
+      source.addEventListener('changes', emit);
+      source.addEventListener('resync', emit);
+      return () => source.close();
+    });
+  }
+
   // ---------- PROFILE  ----------
-  saveUserSelection(body: { username: string; sectorIds: number[] }) {
-    return this.http.post<void>(`${this.baseUrl}/user-selections`, body);
+  // with the ETag of the selection last read, the save fails with 412 if it changed since
+  saveUserSelection(body: { username: string; sectorIds: number[] }, etag?: string) {
+    return this.http.post<{ username: string; sectorIds: number[] }>(
+      `${this.baseUrl}/user-selections`,
+      body,
+      { headers: etag ? { 'If-Match': etag } : {}, observe: 'response' }
+    );
   }
 
   getUserSelection(username: string) {
     return this.http.get<{ username: string; sectorIds: number[] }>(
       `${this.baseUrl}/user-selections`,
-      { params: { username } }
+      { params: { username }, observe: 'response' }
     );
   }
 }
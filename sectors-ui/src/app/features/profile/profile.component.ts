@@ -1,4 +1,4 @@
-import { Component, OnInit } from '@angular/core';
+import { Component, OnDestroy, OnInit } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import {
   FormBuilder,
@@ -8,7 +8,8 @@ import {
   FormControl,
 } from '@angular/forms';
 import { ApiService } from '../../core/services/api.service';
-import {Sector, SectorView} from '../../core/models/sector.model';
+import {Sector, SectorChanges, SectorSearchHit, SectorView} from '../../core/models/sector.model';
+import { Subscription, catchError, debounceTime, distinctUntilChanged, of, switchMap } from 'rxjs';
 
 @Component({
   selector: 'app-profile',
@@ -18,12 +19,20 @@ import {Sector, SectorView} from '../../core/models/sector.model';
   styleUrl: './profile.component.scss',
 })
 
-export class ProfileComponent implements OnInit {
+export class ProfileComponent implements OnInit, OnDestroy {
   sectors: SectorView[] = [];
+  private catalog = new Map<number, Sector>();
+  private changes?: Subscription;
+  private searching?: Subscription;
+  search = new FormControl('', { nonNullable: true });
+  hits: SectorSearchHit[] = [];
   form: FormGroup;
   loading = false;
   message = '';
   errorMessage = '';
+  // ETag of the selection last restored or saved, and whose it is
+  private etag?: string;
+  private etagUsername?: string;
 
   constructor(private fb: FormBuilder, private api: ApiService) {
     this.form = this.fb.group({
@@ -33,8 +42,42 @@ export class ProfileComponent implements OnInit {
   }
 
   ngOnInit(): void {
+    this.loadSectors();
+    this.changes = this.api.sectorChanges().subscribe((changes) => this.applyChanges(changes));
+    this.searching = this.search.valueChanges
+      .pipe(
+        debounceTime(150),
+        distinctUntilChanged(),
+        switchMap((q) =>
+          q.trim() ? this.api.searchSectors(q.trim()).pipe(catchError(() => of([]))) : of([])
+        )
+      )
+      .subscribe((hits) => (this.hits = hits));
+  }
+
+  ngOnDestroy(): void {
+    this.changes?.unsubscribe();
+    this.searching?.unsubscribe();
+  }
+
+  pick(hit: SectorSearchHit): void {
+    const selected = this.sectorIdsCtrl.value as number[];
+    if (!selected.includes(hit.id)) {
+      this.sectorIdsCtrl.setValue([...selected, hit.id]);
+    }
+    this.sectorIdsCtrl.markAsTouched();
+    this.search.setValue('');
+    this.hits = [];
+  }
+
+  pathLabel(hit: SectorSearchHit): string {
+    return [...hit.path.map((s) => s.name), hit.name].join(' › ');
+  }
+
+  private loadSectors(): void {
     this.api.getSectors().subscribe({
       next: (sectors) => {
+        this.catalog = new Map(sectors.map((s) => [s.id, s]));
         this.sectors = this.buildHierarchicalList(sectors);
       },
       error: (err) => {
@@ -44,6 +87,21 @@ export class ProfileComponent implements OnInit {
     });
   }
 
+  private applyChanges(changes: SectorChanges): void {
+    if (changes.fullResync) {
+      this.loadSectors();
+      return;
+    }
+    for (const change of changes.changes) {
+      if (change.deleted) {
+        this.catalog.delete(change.id);
+      } else {
+        this.catalog.set(change.id, { id: change.id, name: change.name!, parentId: change.parentId });
+      }
+    }
+    this.sectors = this.buildHierarchicalList([...this.catalog.values()]);
+  }
+
   private buildHierarchicalList(sectors: Sector[]): SectorView[] {
     const byParent = new Map<number | null, Sector[]>();
 
@@ -102,15 +160,19 @@ export class ProfileComponent implements OnInit {
     this.errorMessage = '';
     this.message = '';
 
-    this.api.saveUserSelection(payload).subscribe({
-      next: () => {
+    const etag = this.etagUsername === payload.username ? this.etag : undefined;
+    this.api.saveUserSelection(payload, etag).subscribe({
+      next: (response) => {
         this.loading = false;
+        this.remember(payload.username, response.headers.get('ETag'));
         this.message = 'Selection saved';
       },
       error: (err: any) => {
         this.loading = false;
         console.error('Failed to save selection', err);
-        this.errorMessage = 'Failed to save selection';
+        this.errorMessage = err?.status === 412
+          ? 'Selection was changed elsewhere; restore it to see the latest'
+          : 'Failed to save selection';
       },
     });
   }
@@ -128,8 +190,10 @@ export class ProfileComponent implements OnInit {
     this.message = '';
 
     this.api.getUserSelection(username).subscribe({
-      next: (data) => {
+      next: (response) => {
         this.loading = false;
+        const data = response.body!;
+        this.remember(data.username, response.headers.get('ETag'));
         // data: { username: string; sectorIds: number[] }
         this.form.patchValue({
           name: data.username,
@@ -145,4 +209,9 @@ export class ProfileComponent implements OnInit {
     });
   }
 
+  private remember(username: string, etag: string | null): void {
+    this.etag = etag ?? undefined;
+    this.etagUsername = username;
+  }
+
 }
@@ -1,3 +1,3 @@
 rootProject.name = "gatto-sectors"
 
-include("sectors-service", "sectors-ui")
+include("sectors-service", "sectors-ui", "sectors-benchmarks", "sectors-loadtest")